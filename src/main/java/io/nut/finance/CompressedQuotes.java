@@ -0,0 +1,334 @@
+/*
+ * CompressedQuotes.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A compressed and immutable copy of the bars of a StockQuotes, for deep
+ * histories that are kept in memory but only read by ranges.
+ * <p>
+ * Bars are stored in blocks of {@link #BLOCK} bars. Inside a block every
+ * column is delta encoded as zigzag varints, the keys from the first key of
+ * the block, that is also kept apart to find the blocks of a range. Prices,
+ * volumes and dividends are delta encoded as ticks, value*10^scale, with the
+ * smallest scale from the decimals of the quotes up that gives back the bits
+ * of every value of the block. A column block without such a scale, because
+ * it holds values with more decimals, NaN, infinities or -0.0 (the ticks are
+ * longs and it would come back as 0.0), is stored raw as the 8 bytes of each
+ * double. Reads only decode the blocks that overlap the requested range.
+ * <p>
+ * It is a container apart from StockQuotes rather than a compressed mode of
+ * it, so the readers and writers of StockQuotes keep a single columnar path.
+ *
+ * @author franci
+ */
+public final class CompressedQuotes
+{
+    static final int BLOCK = 1024;
+    private static final int MAX_SCALE = 9;
+    private static final int RAW = 0xFF;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    //ticks above 2^53 are not exact doubles
+    private static final double MAX_TICKS = 9007199254740992.0;
+
+    private final String ticker;
+    private final boolean applyDividend;
+    private final int decimals;
+    private final double step;
+    private final int size;
+    //first key of each block
+    private final long[] firstKey;
+    //start of each block in data, plus the end of the last one
+    private final int[] position;
+    private final byte[] data;
+
+    private CompressedQuotes(StockQuotes quotes, QuoteColumns cols)
+    {
+        this.ticker = quotes.getTicker();
+        this.applyDividend = quotes.isApplyDividend();
+        this.decimals = quotes.getDecimals();
+        this.step = quotes.getStep();
+        this.size = cols.size;
+        int blocks = (size+BLOCK-1)/BLOCK;
+        this.firstKey = new long[blocks];
+        this.position = new int[blocks+1];
+        Writer out = new Writer(Math.max(size*16, 16));
+        int minScale = Math.max(0, Math.min(decimals, MAX_SCALE));
+        for(int b=0;b<blocks;b++)
+        {
+            int from = b*BLOCK;
+            int count = Math.min(BLOCK, size-from);
+            int k = cols.offset+from;
+            firstKey[b] = cols.keys[k];
+            position[b] = out.size;
+            long prev = firstKey[b];
+            for(int i=k;i<k+count;i++)
+            {
+                out.varint(zigzag(cols.keys[i]-prev));
+                prev = cols.keys[i];
+            }
+            out.column(cols.open, k, count, minScale);
+            out.column(cols.high, k, count, minScale);
+            out.column(cols.low, k, count, minScale);
+            out.column(cols.close, k, count, minScale);
+            out.column(cols.volume, k, count, 0);
+            out.column(cols.dividend, k, count, minScale);
+        }
+        position[blocks] = out.size;
+        this.data = Arrays.copyOf(out.data, out.size);
+    }
+
+    /**
+     * a compressed copy of the current bars of quotes
+     */
+    public static CompressedQuotes compress(StockQuotes quotes)
+    {
+        return new CompressedQuotes(quotes, quotes.snapshot());
+    }
+
+    public String getTicker()
+    {
+        return ticker;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * bytes used by the compressed bars and their block index
+     */
+    public long getBytes()
+    {
+        return data.length + (long)Long.BYTES*firstKey.length + (long)Integer.BYTES*position.length;
+    }
+
+    /**
+     * decodes every bar
+     * @return a read-only StockQuotes
+     */
+    public StockQuotes get()
+    {
+        return get(null, null);
+    }
+    /**
+     * decodes the bars between start and end (both included), null leaves a
+     * side open
+     * @return a read-only StockQuotes
+     */
+    public StockQuotes get(LocalDate start, LocalDate end)
+    {
+        if(start!=null && end!=null && start.isAfter(end))
+        {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        long from = start!=null ? QuoteColumns.epochDay(start) : Long.MIN_VALUE;
+        long to = end!=null ? QuoteColumns.epochDay(end) : Long.MAX_VALUE;
+        QuoteColumns cols = decode(from, to);
+        return new StockQuotes(ticker, applyDividend, decimals, step, cols.slice(cols.ceiling(from), cols.higher(to)), true);
+    }
+
+    /**
+     * decodes the blocks that may have bars in [from,to]
+     */
+    QuoteColumns decode(long from, long to)
+    {
+        int first = Math.max(blockOf(from), 0);
+        int last = blockOf(to);
+        int n = last<first ? 0 : Math.min((last+1)*BLOCK, size)-first*BLOCK;
+        QuoteColumns cols = new QuoteColumns(n);
+        Reader in = new Reader(data);
+        for(int b=first;b<=last;b++)
+        {
+            int k = cols.size;
+            int count = Math.min(BLOCK, size-b*BLOCK);
+            in.pos = position[b];
+            long prev = firstKey[b];
+            for(int i=k;i<k+count;i++)
+            {
+                cols.keys[i] = prev += unzigzag(in.varint());
+            }
+            in.column(cols.open, k, count);
+            in.column(cols.high, k, count);
+            in.column(cols.low, k, count);
+            in.column(cols.close, k, count);
+            in.column(cols.volume, k, count);
+            in.column(cols.dividend, k, count);
+            cols.size += count;
+        }
+        cols.accumulate(0);
+        return cols;
+    }
+    /**
+     * the last block starting on or before key, -1 if none
+     */
+    private int blockOf(long key)
+    {
+        int i = Arrays.binarySearch(firstKey, key);
+        return i>=0 ? i : -i-2;
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value<<1) ^ (value>>63);
+    }
+    private static long unzigzag(long value)
+    {
+        return (value>>>1) ^ -(value&1);
+    }
+
+    /**
+     * the smallest scale in [minScale,MAX_SCALE] that gives back every value exactly, or RAW
+     */
+    private static int scaleOf(double[] values, int from, int count, int minScale)
+    {
+        for(int scale=minScale;scale<=MAX_SCALE;scale++)
+        {
+            double pow = POW10[scale];
+            int i = from;
+            while(i<from+count && exact(values[i], pow))
+            {
+                i++;
+            }
+            if(i==from+count)
+            {
+                return scale;
+            }
+        }
+        return RAW;
+    }
+    /**
+     * true if value is decoded with the same bits, -0.0 is not because the
+     * ticks are longs and it comes back as 0.0
+     */
+    private static boolean exact(double value, double pow)
+    {
+        double ticks = Math.rint(value*pow);
+        return Math.abs(ticks)<MAX_TICKS && Double.doubleToRawLongBits(((long) ticks)/pow)==Double.doubleToRawLongBits(value);
+    }
+
+    private static final class Writer
+    {
+        byte[] data;
+        int size;
+
+        Writer(int capacity)
+        {
+            this.data = new byte[capacity];
+        }
+        void ensure(int bytes)
+        {
+            if(size+bytes>data.length)
+            {
+                data = Arrays.copyOf(data, Math.max(size+bytes, data.length + (data.length>>1)));
+            }
+        }
+        void varint(long value)
+        {
+            ensure(10);
+            while((value & ~0x7FL)!=0)
+            {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+        void column(double[] values, int from, int count, int minScale)
+        {
+            int scale = scaleOf(values, from, count, minScale);
+            ensure(1);
+            data[size++] = (byte) scale;
+            if(scale==RAW)
+            {
+                for(int i=from;i<from+count;i++)
+                {
+                    long bits = Double.doubleToRawLongBits(values[i]);
+                    ensure(8);
+                    for(int b=0;b<8;b++)
+                    {
+                        data[size++] = (byte) (bits>>>(8*b));
+                    }
+                }
+                return;
+            }
+            double pow = POW10[scale];
+            long prev = 0;
+            for(int i=from;i<from+count;i++)
+            {
+                long ticks = (long) Math.rint(values[i]*pow);
+                varint(zigzag(ticks-prev));
+                prev = ticks;
+            }
+        }
+    }
+
+    private static final class Reader
+    {
+        final byte[] data;
+        int pos;
+
+        Reader(byte[] data)
+        {
+            this.data = data;
+        }
+        long varint()
+        {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[pos++];
+                value |= (long)(b & 0x7F)<<shift;
+                shift += 7;
+            }
+            while(b<0);
+            return value;
+        }
+        void column(double[] values, int from, int count)
+        {
+            int scale = data[pos++] & 0xFF;
+            if(scale==RAW)
+            {
+                for(int i=from;i<from+count;i++)
+                {
+                    long bits = 0;
+                    for(int b=0;b<8;b++)
+                    {
+                        bits |= (data[pos++] & 0xFFL)<<(8*b);
+                    }
+                    values[i] = Double.longBitsToDouble(bits);
+                }
+                return;
+            }
+            double pow = POW10[scale];
+            long ticks = 0;
+            for(int i=from;i<from+count;i++)
+            {
+                ticks += unzigzag(varint());
+                values[i] = ticks/pow;
+            }
+        }
+    }
+}
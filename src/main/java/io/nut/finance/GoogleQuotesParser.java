@@ -47,6 +47,7 @@ public class GoogleQuotesParser implements QuotesParser
     public int importQuotes(InputStream in, StockQuotes sq) throws ParseException
     {
         int count=0;
+        QuoteColumns batch = new QuoteColumns();
         Scanner sc = new Scanner(in, CharSets.ISO88591);
         try
         {
@@ -66,7 +67,7 @@ public class GoogleQuotesParser implements QuotesParser
                 double close = Parsers.safeParseDouble(data[4]);
                 double volume = Parsers.safeParseDouble(data[5]);
 
-                sq.add(date, open, high, low, close, volume);
+                batch.add(date, open, high, low, close, volume, 0);
                 count++;
             }
         }
@@ -74,8 +75,15 @@ public class GoogleQuotesParser implements QuotesParser
         {
             ParseException parseException = new ParseException(ex.getMessage(), count);
             parseException.initCause(ex);
+            sq.addPartial(batch, parseException);
             throw parseException;
         }
+        catch(RuntimeException ex)
+        {
+            sq.addPartial(batch, ex);
+            throw ex;
+        }
+        sq.addAll(batch);
         return count;
     }
     @Override
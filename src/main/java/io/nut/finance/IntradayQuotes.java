@@ -0,0 +1,500 @@
+/*
+ * IntradayQuotes.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.base.math.Round;
+import io.nut.base.util.Sorts;
+import io.nut.finance.StockQuotes.Field;
+import io.nut.finance.indicator.ExponentialMovingAverage;
+import io.nut.finance.indicator.HullMovingAverage;
+import io.nut.finance.indicator.MovingAverageConvergenceDivergence;
+import io.nut.finance.indicator.SimpleMovingAverage;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Intraday bars keyed by their start time in epoch seconds, the counterpart of
+ * StockQuotes for minute or hourly bars. Bars are kept in the same columnar
+ * snapshots, so appending in time order shares the arrays and readers never
+ * block, and the getters work the same way with times instead of dates. Time
+ * bounds are inclusive, Long.MIN_VALUE and Long.MAX_VALUE leave a side open.
+ * <p>
+ * Intraday bars have no dividends and zero prices are always repaired.
+ *
+ * @author franci
+ */
+public class IntradayQuotes
+{
+    /**
+     * A window of consecutive bars stored as one array per field, fields not
+     * requested are null.
+     */
+    public static class Bars
+    {
+        public final int length;
+        public final long[] time;
+        public final double[] open;
+        public final double[] high;
+        public final double[] low;
+        public final double[] close;
+        public final double[] volume;
+
+        Bars(long[] time, double[] open, double[] high, double[] low, double[] close, double[] volume)
+        {
+            this.length = time.length;
+            this.time = time;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+        public double[] get(Field field)
+        {
+            switch(field)
+            {
+                case Open:
+                    return open;
+                case High:
+                    return high;
+                case Low:
+                    return low;
+                case Close:
+                    return close;
+                default:
+                    return volume;
+            }
+        }
+    }
+
+    public static class AverageTrueRange
+    {
+        public final String ticker;
+        public final int count;
+        public final long firstTime;
+        public final long lastTime;
+        public final double value;
+        public final double[] history;
+        AverageTrueRange(String ticker, int count, long firstTime, long lastTime, double value, double[] history)
+        {
+            this.ticker = ticker;
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.value = value;
+            this.history = history;
+        }
+    }
+
+    public static class TrailingStop
+    {
+        public final String ticker;
+        public final int count;
+        public final long firstTime;
+        public final long lastTime;
+        public final double value;
+        public final long[] historyTimes;
+        public final double[] historyValues;
+        public final boolean exit;
+        public final long exitAt;
+        public final double exitValue;
+        TrailingStop(String ticker, int count, long firstTime, long lastTime, double value, long[] historyTimes, double[] historyValues, boolean exit, long exitAt, double exitValue)
+        {
+            this.ticker = ticker;
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.value = value;
+            this.historyTimes = historyTimes;
+            this.historyValues = historyValues;
+            this.exit = exit;
+            this.exitAt = exitAt;
+            this.exitValue = exitValue;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final String ticker;
+    //immutable snapshot, replaced by writers while holding the lock
+    private volatile QuoteColumns columns = new QuoteColumns();
+    private final int decimals;
+    private final double step;
+    private final Round roundCeiling;
+    private final Round roundFloor;
+
+    public IntradayQuotes()
+    {
+        this(null, 2, 0.01);
+    }
+    public IntradayQuotes(int decimals, double step)
+    {
+        this(null, decimals, step);
+    }
+    public IntradayQuotes(String ticker, int decimals, double step)
+    {
+        this.ticker = ticker;
+        this.decimals = decimals;
+        this.step = step;
+        this.roundCeiling = Round.getCeilingInstance(decimals);
+        this.roundFloor = Round.getFloorInstance(decimals);
+    }
+
+    public String getTicker()
+    {
+        return ticker;
+    }
+
+    public int getDecimals()
+    {
+        return decimals;
+    }
+
+    public double getStep()
+    {
+        return step;
+    }
+
+    /**
+     * stores the bar starting at time, replacing the one with the same time if any
+     * @return true if a bar was replaced
+     */
+    public boolean add(long time, double open, double high, double low, double close, double volume)
+    {
+        synchronized(lock)
+        {
+            QuoteColumns cols = this.columns;
+            if(cols.size==0 || time>cols.key(cols.size-1))
+            {
+                this.columns = cols.append(time, open, high, low, close, volume, 0);
+                return false;
+            }
+            QuoteColumns next = cols.copy(cols.size+1);
+            boolean ret = next.put(time, open, high, low, close, volume, 0);
+            this.columns = next;
+            return ret;
+        }
+    }
+    /**
+     * stores the bars of the given columns, in any order, as sequential adds would do
+     * @return the number of new bars
+     */
+    public int addAll(long[] time, double[] open, double[] high, double[] low, double[] close, double[] volume)
+    {
+        int n = time.length;
+        if(open.length!=n || high.length!=n || low.length!=n || close.length!=n || volume.length!=n)
+        {
+            throw new IllegalArgumentException("columns of different length");
+        }
+        QuoteColumns batch = new QuoteColumns(n);
+        for(int i=0;i<n;i++)
+        {
+            batch.add(time[i], open[i], high[i], low[i], close[i], volume[i], 0);
+        }
+        batch = batch.sorted();
+        synchronized(lock)
+        {
+            QuoteColumns cols = this.columns;
+            QuoteColumns next = cols.merge(batch, StockQuotes.MergePolicy.Overwrite);
+            this.columns = next;
+            return next.size-cols.size;
+        }
+    }
+
+    public int size()
+    {
+        return columns.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return columns.size==0;
+    }
+
+    public long firstTime()
+    {
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.key(0);
+    }
+
+    public long lastTime()
+    {
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.key(cols.size-1);
+    }
+
+    private static void checkRange(long start, long end)
+    {
+        if(start>end)
+        {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+    }
+
+    private static long[] getTime(QuoteColumns cols, int from, int to, boolean reverseOrder)
+    {
+        long[] time = new long[Math.max(to-from, 0)];
+        System.arraycopy(cols.keys, cols.offset+from, time, 0, time.length);
+        if(reverseOrder)
+        {
+            Sorts.reverse(time);
+        }
+        return time;
+    }
+    private static double[] getValue(QuoteColumns cols, int from, int to, Field field, boolean reverseOrder)
+    {
+        double[] data = new double[Math.max(to-from, 0)];
+        cols.fill(from, field, data);
+        if(reverseOrder)
+        {
+            Sorts.reverse(data);
+        }
+        return data;
+    }
+    private double[] getValue(long start, long end, Field field, boolean reverseOrder)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getValue(cols, cols.ceiling(start), cols.higher(end), field, reverseOrder);
+    }
+    private double[] getValue(int count, long end, Field field, boolean reverseOrder)
+    {
+        QuoteColumns cols = this.columns;
+        int to = cols.higher(end);
+        return getValue(cols, Math.max(to-count, 0), to, field, reverseOrder);
+    }
+
+    public long[] getTime(long start, long end, boolean reverseOrder)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getTime(cols, cols.ceiling(start), cols.higher(end), reverseOrder);
+    }
+    public double[] getOpen(long start, long end, boolean reverseOrder)
+    {
+        return getValue(start, end, Field.Open, reverseOrder);
+    }
+    public double[] getHigh(long start, long end, boolean reverseOrder)
+    {
+        return getValue(start, end, Field.High, reverseOrder);
+    }
+    public double[] getLow(long start, long end, boolean reverseOrder)
+    {
+        return getValue(start, end, Field.Low, reverseOrder);
+    }
+    public double[] getClose(long start, long end, boolean reverseOrder)
+    {
+        return getValue(start, end, Field.Close, reverseOrder);
+    }
+    public double[] getVolume(long start, long end, boolean reverseOrder)
+    {
+        return getValue(start, end, Field.Volume, reverseOrder);
+    }
+
+    public long[] getTime(int count, long end, boolean reverseOrder)
+    {
+        QuoteColumns cols = this.columns;
+        int to = cols.higher(end);
+        return getTime(cols, Math.max(to-count, 0), to, reverseOrder);
+    }
+    public double[] getOpen(int count, long end, boolean reverseOrder)
+    {
+        return getValue(count, end, Field.Open, reverseOrder);
+    }
+    public double[] getHigh(int count, long end, boolean reverseOrder)
+    {
+        return getValue(count, end, Field.High, reverseOrder);
+    }
+    public double[] getLow(int count, long end, boolean reverseOrder)
+    {
+        return getValue(count, end, Field.Low, reverseOrder);
+    }
+    public double[] getClose(int count, long end, boolean reverseOrder)
+    {
+        return getValue(count, end, Field.Close, reverseOrder);
+    }
+    public double[] getVolume(int count, long end, boolean reverseOrder)
+    {
+        return getValue(count, end, Field.Volume, reverseOrder);
+    }
+
+    private static Bars getBars(QuoteColumns cols, int from, int to, Field[] fields)
+    {
+        double[][] data = new double[Field.values().length][];
+        for(Field field : fields)
+        {
+            if(data[field.ordinal()]==null)
+            {
+                data[field.ordinal()] = getValue(cols, from, to, field, false);
+            }
+        }
+        return new Bars(getTime(cols, from, to, false), data[Field.Open.ordinal()], data[Field.High.ordinal()], data[Field.Low.ordinal()], data[Field.Close.ordinal()], data[Field.Volume.ordinal()]);
+    }
+    /**
+     * Gets the bars between start and end (both included) in one pass.
+     */
+    public Bars getBars(long start, long end, Field... fields)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getBars(cols, cols.ceiling(start), cols.higher(end), fields);
+    }
+    /**
+     * Gets the last count bars until end (included) in one pass.
+     */
+    public Bars getBars(int count, long end, Field... fields)
+    {
+        QuoteColumns cols = this.columns;
+        int to = cols.higher(end);
+        return getBars(cols, Math.max(to-count, 0), to, fields);
+    }
+
+    public double[] getSimpleMovingAverage(long start, long end, int period, boolean reverseOrder)
+    {
+        return new SimpleMovingAverage(period).get1st(getValue(start, end, Field.Close, reverseOrder));
+    }
+    public double[] getSimpleMovingAverage(int count, long end, int period, boolean reverseOrder)
+    {
+        return new SimpleMovingAverage(period).get1st(getValue(count, end, Field.Close, reverseOrder));
+    }
+
+    public double[] getExponentialMovingAverage(long start, long end, int period, boolean reverseOrder)
+    {
+        return new ExponentialMovingAverage(period).get1st(getValue(start, end, Field.Close, reverseOrder));
+    }
+    public double[] getExponentialMovingAverage(int count, long end, int period, boolean reverseOrder)
+    {
+        return new ExponentialMovingAverage(period).get1st(getValue(count, end, Field.Close, reverseOrder));
+    }
+
+    public double[] getHullMovingAverage(long start, long end, int period, boolean reverseOrder)
+    {
+        return new HullMovingAverage(period).get1st(getValue(start, end, Field.Close, reverseOrder));
+    }
+    public double[] getHullMovingAverage(int count, long end, int period, boolean reverseOrder)
+    {
+        return new HullMovingAverage(period).get1st(getValue(count, end, Field.Close, reverseOrder));
+    }
+
+    public double[][] getMovingAverageConvergenceDivergence(long start, long end, int fastPeriod, int slowPeriod, int signalPeriod, boolean reverseOrder)
+    {
+        return new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod).getAll(getValue(start, end, Field.Close, reverseOrder));
+    }
+    public double[][] getMovingAverageConvergenceDivergence(int count, long end, int fastPeriod, int slowPeriod, int signalPeriod, boolean reverseOrder)
+    {
+        return new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod).getAll(getValue(count, end, Field.Close, reverseOrder));
+    }
+
+    public AverageTrueRange getAverageTrueRange(int count, long until, int period)
+    {
+        Bars bars = getBars(count+period, until, Field.Close, Field.High, Field.Low);
+        if(bars.length==0)
+        {
+            return null;
+        }
+        double[] atr = TrailingStops.wilderAverageTrueRange(bars.high, bars.low, bars.close, period);
+        double value = atr[atr.length-1];
+        long firstTime = bars.time[Math.max(bars.length-count, 0)];
+        long lastTime = bars.time[bars.length-1];
+        return new AverageTrueRange(this.ticker, count, firstTime, lastTime, value, Arrays.copyOfRange(atr, period, atr.length));
+    }
+
+    public TrailingStop getParabolicStop(long start, long end, double stopLoss, double accelerationFactor, double accelerationLimit, boolean sellShort)
+    {
+        assert accelerationFactor>0;
+        assert stopLoss>0;
+        checkRange(start, end);
+
+        Bars bars = getBars(start, end, Field.Open, Field.High, Field.Low, Field.Close);
+        if(bars.length==0)
+        {
+            return null;
+        }
+        TrailingStops run = TrailingStops.parabolic(bars.open, bars.high, bars.low, bars.close, stopLoss, accelerationFactor, accelerationLimit, sellShort);
+        return trailingStop(bars.time, 0, run);
+    }
+    public TrailingStop getSafeZoneStop(long start, long end, double stopLoss, double coefficient, int period, boolean sellShort)
+    {
+        assert coefficient>0;
+        assert stopLoss>0;
+        assert period>0;
+        checkRange(start, end);
+
+        QuoteColumns cols = this.columns;
+        int from = seedIndex(cols, start, period);
+        Bars bars = getBars(cols, from, cols.higher(end), new Field[]{Field.Open, Field.High, Field.Low, Field.Close});
+        if(bars.length==0)
+        {
+            return null;
+        }
+        int first = cols.ceiling(start)-from;
+        TrailingStops run = TrailingStops.safeZone(bars.open, bars.high, bars.low, bars.close, first, stopLoss, coefficient, period, sellShort, sellShort ? roundCeiling : roundFloor, this.step);
+        return trailingStop(bars.time, first, run);
+    }
+    public TrailingStop getChandelierStop(long start, long end, double stopLoss, double coefficient, int period, boolean sellShort)
+    {
+        assert coefficient>0;
+        assert stopLoss>0;
+        assert period>0;
+        checkRange(start, end);
+
+        QuoteColumns cols = this.columns;
+        int from = seedIndex(cols, start, period);
+        Bars bars = getBars(cols, from, cols.higher(end), new Field[]{Field.Open, Field.High, Field.Low, Field.Close});
+        if(bars.length==0)
+        {
+            return null;
+        }
+        int first = cols.ceiling(start)-from;
+        TrailingStops run = TrailingStops.chandelier(bars.open, bars.high, bars.low, bars.close, first, stopLoss, coefficient, period, sellShort, sellShort ? roundCeiling : roundFloor, this.step);
+        return trailingStop(bars.time, first, run);
+    }
+    /**
+     * position of the first of the period+2 bars until start, so the stop is seeded when the window begins
+     */
+    private static int seedIndex(QuoteColumns cols, long start, int period)
+    {
+        return Math.max(cols.higher(start)-(period+2), 0);
+    }
+    /**
+     * the history from position first, or from the last bar if every bar is before it
+     */
+    private TrailingStop trailingStop(long[] time, int first, TrailingStops run)
+    {
+        int from = Math.min(first, time.length-1);
+        double[] stop = run.stop;
+        if(from>0)
+        {
+            stop = Arrays.copyOfRange(stop, from, stop.length);
+            time = Arrays.copyOfRange(time, from, time.length);
+        }
+        boolean exit = run.exit>=0;
+        long exitAt = exit ? time[run.exit-from] : 0;
+        return new TrailingStop(this.ticker, stop.length, time[0], time[time.length-1], run.value, time, stop, exit, exitAt, run.exitValue);
+    }
+}
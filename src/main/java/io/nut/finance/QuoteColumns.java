@@ -0,0 +1,1014 @@
+/*
+ * QuoteColumns.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.base.math.Nums;
+import io.nut.finance.StockQuotes.Field;
+import io.nut.finance.StockQuotes.MergePolicy;
+import io.nut.finance.StockQuotes.Quote;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Columnar storage of bars, one primitive array per field, sorted by a long
+ * key that is the epoch day for daily bars and the epoch second for intraday
+ * ones. Only the {@code size} positions from {@code offset} of each array
+ * are valid, and every method takes positions relative to offset. The offset
+ * is 0 except for read-only slices made by {@link #slice}, which are never
+ * written.
+ * <p>
+ * Once published an instance is a snapshot and must not be modified, writers
+ * derive a new version with {@link #append}, {@link #withDividend} or a
+ * {@link #copy} that is modified before being published. Versions may share
+ * arrays, but a version never writes below the size of the one it comes from.
+ * <p>
+ * The bars of a {@link StockQuotesFile} are read in place from the mapped
+ * file instead, see {@link #mapped}. Those instances only serve reads and
+ * leave the arrays null, {@link #heap} gives a copy in arrays.
+ *
+ * @author franci
+ */
+final class QuoteColumns
+{
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Field[] FIELDS = Field.values();
+    //column of the dividends after the ones of FIELDS
+    private static final int DIVIDEND = FIELDS.length;
+
+    int offset;
+    int size;
+    long[] keys;
+    double[] open;
+    double[] high;
+    double[] low;
+    double[] close;
+    double[] volume;
+    double[] dividend;
+    /**
+     * running total of dividend[0..i], so the dividends paid in (i,j] are
+     * cumDividend[j]-cumDividend[i]
+     */
+    double[] cumDividend;
+    /**
+     * open, high, low, close and volume by Field ordinal with every zero after
+     * the first non zero value replaced by the previous one, so reads only have
+     * to repair the zeros that start a window
+     */
+    double[][] fixed;
+    /**
+     * zero values by Field ordinal, the ones repaired on reads, kept by the
+     * writers before publishing. Null in slices, see counted.
+     */
+    int[] zeros;
+    /**
+     * zeros of a slice, counted by the first reader that asks. Volatile so
+     * readers of other threads only see it fully counted.
+     */
+    private volatile int[] counted;
+    /**
+     * dense key to position table, built on the first lookup and shared with
+     * the versions that keep these rows
+     */
+    private volatile KeyTable table;
+    /**
+     * the mapped columns when the bars are read in place, otherwise null
+     */
+    private final Mapped mapped;
+
+    /**
+     * Columns of a mapped file, the keys as ints and open, high, low, close,
+     * volume and dividend as doubles, positions as in the arrays.
+     */
+    private static final class Mapped
+    {
+        final IntBuffer keys;
+        final DoubleBuffer[] columns;
+        //positions with a dividend and their running total over the whole column, found on the first lookup
+        volatile Dividends dividends;
+
+        Mapped(IntBuffer keys, DoubleBuffer[] columns)
+        {
+            this.keys = keys;
+            this.columns = columns;
+        }
+
+        Dividends dividends()
+        {
+            Dividends d = dividends;
+            if(d==null)
+            {
+                DoubleBuffer column = columns[DIVIDEND];
+                //slices share this instance, so it covers every bar and not those of the first reader
+                int size = column.limit();
+                int count = 0;
+                for(int k=0;k<size;k++)
+                {
+                    if(column.get(k)!=0)
+                    {
+                        count++;
+                    }
+                }
+                d = new Dividends(count);
+                double sum = 0;
+                for(int k=0, j=0;k<size;k++)
+                {
+                    double value = column.get(k);
+                    if(value!=0)
+                    {
+                        d.position[j] = k;
+                        d.total[j++] = sum += value;
+                    }
+                }
+                dividends = d;
+            }
+            return d;
+        }
+    }
+    /**
+     * The non zero dividends of a mapped file, so the sum of the dividends up
+     * to a position is the total of the last one on or before it.
+     */
+    private static final class Dividends
+    {
+        final int[] position;
+        final double[] total;
+
+        Dividends(int count)
+        {
+            this.position = new int[count];
+            this.total = new double[count];
+        }
+        double upTo(int k)
+        {
+            int i = Arrays.binarySearch(position, k);
+            i = i>=0 ? i : -i-2;
+            return i>=0 ? total[i] : 0.0;
+        }
+    }
+
+    /**
+     * For every key in [base,base+higher.length) the absolute position of the
+     * first row after it, built over the rows [from,to) of the arrays. Rows are
+     * never rewritten below the size of a version, so it stays valid for the
+     * versions that share the arrays and only later rows need a search.
+     */
+    private static final class KeyTable
+    {
+        //tables only for keys as dense as daily bars, not for intraday seconds
+        static final int MAX_KEYS_PER_ROW = 4;
+        //rows appended after the table was built that are searched before rebuilding it
+        static final int MAX_TAIL = 64;
+
+        final long base;
+        final int from;
+        final int to;
+        final int[] higher;
+
+        KeyTable(long[] keys, int from, int to)
+        {
+            this.base = keys[from];
+            this.from = from;
+            this.to = to;
+            this.higher = new int[(int) (keys[to-1]-base+1)];
+            for(int i=from, k=0;k<higher.length;k++)
+            {
+                while(i<to && keys[i]<=base+k)
+                {
+                    i++;
+                }
+                higher[k] = i;
+            }
+        }
+    }
+
+    QuoteColumns()
+    {
+        this(INITIAL_CAPACITY);
+    }
+    private QuoteColumns(QuoteColumns src, int size)
+    {
+        this.offset      = src.offset;
+        this.size        = size;
+        this.keys        = src.keys;
+        this.open        = src.open;
+        this.high        = src.high;
+        this.low         = src.low;
+        this.close       = src.close;
+        this.volume      = src.volume;
+        this.dividend    = src.dividend;
+        this.cumDividend = src.cumDividend;
+        this.fixed       = src.fixed;
+        this.zeros       = src.zeros!=null ? src.zeros.clone() : null;
+        this.counted     = src.counted;
+        this.table       = src.table;
+        this.mapped      = src.mapped;
+    }
+    QuoteColumns(int capacity)
+    {
+        this.keys     = new long[capacity];
+        this.open     = new double[capacity];
+        this.high     = new double[capacity];
+        this.low      = new double[capacity];
+        this.close    = new double[capacity];
+        this.volume   = new double[capacity];
+        this.dividend = new double[capacity];
+        this.cumDividend = new double[capacity];
+        this.fixed = new double[FIELDS.length][capacity];
+        this.zeros = new int[FIELDS.length];
+        this.mapped = null;
+    }
+    private QuoteColumns(Mapped mapped, int size)
+    {
+        this.size = size;
+        this.mapped = mapped;
+    }
+
+    /**
+     * read-only columns over the mapped ones of a file, the keys must be
+     * strictly ascending and every buffer must hold size values from 0
+     */
+    static QuoteColumns mapped(IntBuffer keys, DoubleBuffer open, DoubleBuffer high, DoubleBuffer low, DoubleBuffer close, DoubleBuffer volume, DoubleBuffer dividend, int size)
+    {
+        return new QuoteColumns(new Mapped(keys, new DoubleBuffer[]{open, high, low, close, volume, dividend}), size);
+    }
+
+    /**
+     * this instance if the bars are in arrays, otherwise a copy of them in arrays
+     */
+    QuoteColumns heap()
+    {
+        return mapped==null ? this : copy(size);
+    }
+
+    /**
+     * value of a column, a Field ordinal or DIVIDEND, at the absolute position k
+     */
+    private double raw(int column, int k)
+    {
+        if(mapped!=null)
+        {
+            return mapped.columns[column].get(k);
+        }
+        return column==DIVIDEND ? dividend[k] : FIELDS[column].of(this)[k];
+    }
+
+    /**
+     * key of a date in daily bars
+     */
+    static long epochDay(LocalDate date)
+    {
+        return date.toEpochDay();
+    }
+
+    /**
+     * same result as Arrays.binarySearch over the valid positions
+     */
+    int indexOf(long key)
+    {
+        int i = higher(key);
+        return i>0 && key(i-1)==key ? i-1 : -i-1;
+    }
+    /**
+     * index of the first bar on or after key
+     */
+    int ceiling(long key)
+    {
+        return key==Long.MIN_VALUE ? 0 : higher(key-1);
+    }
+    /**
+     * index of the first bar after key, so [0,higher(key)) are the bars on or
+     * before key. Dense keys are mapped with the key table, others searched.
+     */
+    int higher(long key)
+    {
+        if(mapped!=null)
+        {
+            return higherMapped(key);
+        }
+        int end = offset+size;
+        KeyTable t = keyTable();
+        int i;
+        if(t==null)
+        {
+            i = Arrays.binarySearch(keys, offset, end, key);
+            i = i>=0 ? i+1 : -i-1;
+        }
+        else if(key<t.base)
+        {
+            i = t.from;
+        }
+        else if(key-t.base>=0 && key-t.base<t.higher.length)
+        {
+            i = t.higher[(int) (key-t.base)];
+        }
+        else
+        {
+            i = Arrays.binarySearch(keys, Math.max(t.to, offset), Math.max(end, t.to), key);
+            i = i>=0 ? i+1 : -i-1;
+        }
+        return Math.min(Math.max(i, offset), end)-offset;
+    }
+    /**
+     * higher searching the mapped keys, which are ints
+     */
+    private int higherMapped(long key)
+    {
+        IntBuffer buffer = mapped.keys;
+        int lo = offset;
+        int hi = offset+size;
+        while(lo<hi)
+        {
+            int mid = (lo+hi)>>>1;
+            if(buffer.get(mid)<=key)
+            {
+                lo = mid+1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo-offset;
+    }
+    private KeyTable keyTable()
+    {
+        KeyTable t = table;
+        int end = offset+size;
+        if(t!=null && t.from<=offset && end-t.to<=KeyTable.MAX_TAIL)
+        {
+            return t;
+        }
+        long span = size>0 ? keys[end-1]-keys[offset] : -1;
+        if(span<0 || span>=(long)KeyTable.MAX_KEYS_PER_ROW*size)
+        {
+            return null;
+        }
+        return table = new KeyTable(keys, offset, end);
+    }
+
+    long key(int i)
+    {
+        return mapped!=null ? mapped.keys.get(offset+i) : keys[offset+i];
+    }
+    LocalDate date(int i)
+    {
+        return LocalDate.ofEpochDay(key(i));
+    }
+    Quote get(int i)
+    {
+        int k = offset+i;
+        if(mapped!=null)
+        {
+            return new Quote(date(i), raw(0, k), raw(1, k), raw(2, k), raw(3, k), raw(4, k), raw(DIVIDEND, k));
+        }
+        return new Quote(date(i), open[k], high[k], low[k], close[k], volume[k], dividend[k]);
+    }
+
+    /**
+     * stores a bar, replacing the one with the same date if any
+     * @return true if a bar was replaced
+     */
+    boolean put(Quote quote)
+    {
+        return put(epochDay(quote.date), quote.open, quote.high, quote.low, quote.close, quote.volume, quote.dividend);
+    }
+    /**
+     * stores a bar, replacing the one with the same key if any
+     * @return true if a bar was replaced
+     */
+    boolean put(long key, double open, double high, double low, double close, double volume, double dividend)
+    {
+        int i = indexOf(key);
+        if(i>=0)
+        {
+            uncount(i, size);
+            set(i, key, open, high, low, close, volume, dividend);
+            accumulate(i);
+            return true;
+        }
+        insert(-i-1, key, open, high, low, close, volume, dividend);
+        return false;
+    }
+
+    private void insert(int i, long key, double open, double high, double low, double close, double volume, double dividend)
+    {
+        ensureCapacity(size+1);
+        uncount(i, size);
+        if(i<size)
+        {
+            table = null;
+            int n = size-i;
+            System.arraycopy(this.keys, i, this.keys, i+1, n);
+            System.arraycopy(this.open, i, this.open, i+1, n);
+            System.arraycopy(this.high, i, this.high, i+1, n);
+            System.arraycopy(this.low, i, this.low, i+1, n);
+            System.arraycopy(this.close, i, this.close, i+1, n);
+            System.arraycopy(this.volume, i, this.volume, i+1, n);
+            System.arraycopy(this.dividend, i, this.dividend, i+1, n);
+        }
+        size++;
+        set(i, key, open, high, low, close, volume, dividend);
+        accumulate(i);
+    }
+
+    private void set(int i, long key, double open, double high, double low, double close, double volume, double dividend)
+    {
+        this.keys[i]     = key;
+        this.open[i]     = open;
+        this.high[i]     = high;
+        this.low[i]      = low;
+        this.close[i]    = close;
+        this.volume[i]   = volume;
+        this.dividend[i] = dividend;
+    }
+
+    /**
+     * adds a bar at the end without checking the order, only for batches that
+     * go through {@link #sorted} before being used
+     */
+    void add(LocalDate date, double open, double high, double low, double close, double volume, double dividend)
+    {
+        add(epochDay(date), open, high, low, close, volume, dividend);
+    }
+    void add(long key, double open, double high, double low, double close, double volume, double dividend)
+    {
+        ensureCapacity(size+1);
+        set(size++, key, open, high, low, close, volume, dividend);
+    }
+
+    /**
+     * adds bar i of src at the end, or when merge is true folds it into the
+     * last bar keeping its date and open
+     */
+    void aggregate(QuoteColumns src, int i, boolean merge)
+    {
+        if(!merge)
+        {
+            ensureCapacity(size+1);
+            copyRow(src, i);
+            accumulate(size-1);
+            return;
+        }
+        int j = size-1;
+        uncount(j, size);
+        int k = src.offset+i;
+        high[j]        = Nums.maxOf(high[j], src.raw(Field.High.ordinal(), k));
+        low[j]         = Nums.minOf(low[j], src.raw(Field.Low.ordinal(), k));
+        close[j]       = src.raw(Field.Close.ordinal(), k);
+        volume[j]     += src.raw(Field.Volume.ordinal(), k);
+        dividend[j]   += src.raw(DIVIDEND, k);
+        accumulate(j);
+    }
+
+    private void copyRow(QuoteColumns src, int i)
+    {
+        if(src.mapped!=null)
+        {
+            int k = src.offset+i;
+            set(size++, src.key(i), src.raw(0, k), src.raw(1, k), src.raw(2, k), src.raw(3, k), src.raw(4, k), src.raw(DIVIDEND, k));
+            return;
+        }
+        i += src.offset;
+        int j = size++;
+        keys[j]     = src.keys[i];
+        open[j]     = src.open[i];
+        high[j]     = src.high[i];
+        low[j]      = src.low[i];
+        close[j]    = src.close[i];
+        volume[j]   = src.volume[i];
+        dividend[j] = src.dividend[i];
+    }
+    private void copyRows(QuoteColumns src, int from, int count)
+    {
+        if(src.mapped!=null)
+        {
+            for(int i=from;i<from+count;i++)
+            {
+                copyRow(src, i);
+            }
+            return;
+        }
+        from += src.offset;
+        System.arraycopy(src.keys, from, keys, size, count);
+        System.arraycopy(src.open, from, open, size, count);
+        System.arraycopy(src.high, from, high, size, count);
+        System.arraycopy(src.low, from, low, size, count);
+        System.arraycopy(src.close, from, close, size, count);
+        System.arraycopy(src.volume, from, volume, size, count);
+        System.arraycopy(src.dividend, from, dividend, size, count);
+        size += count;
+    }
+
+    void setDividend(int i, double value)
+    {
+        if(dividend[i]!=value)
+        {
+            dividend[i] = value;
+            accumulateDividends(i);
+        }
+    }
+
+    /**
+     * rebuilds the derived columns from position i to the end, the prefix
+     * before i is still valid and zeros must count only the bars before i
+     */
+    void accumulate(int i)
+    {
+        if(i==0)
+        {
+            Arrays.fill(zeros, 0);
+        }
+        accumulateDividends(i);
+        for(int f=0;f<FIELDS.length;f++)
+        {
+            double[] raw = FIELDS[f].of(this);
+            double[] fix = fixed[f];
+            int count = 0;
+            for(int k=i;k<size;k++)
+            {
+                if(raw[k]!=0)
+                {
+                    fix[k] = raw[k];
+                }
+                else
+                {
+                    fix[k] = k>0 ? fix[k-1] : 0.0;
+                    count++;
+                }
+            }
+            zeros[f] += count;
+        }
+    }
+    /**
+     * rebuilds the running dividend total from position i to the end, the
+     * prefix before i is still valid
+     */
+    private void accumulateDividends(int i)
+    {
+        double sum = i>0 ? cumDividend[i-1] : 0.0;
+        for(;i<size;i++)
+        {
+            cumDividend[i] = sum += dividend[i];
+        }
+    }
+    /**
+     * removes the bars [from,to) from the zero counts before they are rewritten
+     */
+    private void uncount(int from, int to)
+    {
+        for(int f=0;f<FIELDS.length;f++)
+        {
+            double[] raw = FIELDS[f].of(this);
+            for(int k=from;k<to;k++)
+            {
+                if(raw[k]==0)
+                {
+                    zeros[f]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * number of zero values of a field, counted on the first call for slices
+     */
+    int zeros(Field field)
+    {
+        int[] count = zeros!=null ? zeros : counted;
+        if(count==null)
+        {
+            count = new int[FIELDS.length];
+            for(int f=0;f<FIELDS.length;f++)
+            {
+                for(int k=offset;k<offset+size;k++)
+                {
+                    if(raw(f, k)==0)
+                    {
+                        count[f]++;
+                    }
+                }
+            }
+            counted = count;
+        }
+        return count[field.ordinal()];
+    }
+
+    /**
+     * copies data.length values of a field from position from with the zeros
+     * repaired
+     */
+    void fill(int from, Field field, double[] data)
+    {
+        fill(from, field, data, 0, data.length);
+    }
+    /**
+     * copies count values of a field from position from into data at dst with
+     * the zeros repaired
+     */
+    void fill(int from, Field field, double[] data, int dst, int count)
+    {
+        if(mapped!=null)
+        {
+            fillMapped(from, field, data, dst, count);
+            return;
+        }
+        double[] src = field.of(this);
+        int k = offset+from;
+        //zeros after a non zero value were repaired when the bars were stored
+        System.arraycopy(fixed[field.ordinal()], k, data, dst, count);
+        if(count>0 && src[k]==0)
+        {
+            //the zeros starting the window are repaired from the other prices of its first bar
+            double first = first(field, k);
+            for(int i=0;i<count && src[k+i]==0;i++)
+            {
+                data[dst+i] = first;
+            }
+        }
+    }
+
+    /**
+     * fill for mapped columns, that have no repaired copy. Inside a window a
+     * zero after a non zero value takes the previous value, which is what
+     * the repaired column holds, and the zeros starting it are repaired as in
+     * fill.
+     */
+    private void fillMapped(int from, Field field, double[] data, int dst, int count)
+    {
+        DoubleBuffer src = mapped.columns[field.ordinal()];
+        int k = offset+from;
+        double previous = count>0 && src.get(k)==0 ? first(field, k) : 0.0;
+        for(int i=0;i<count;i++)
+        {
+            double value = src.get(k+i);
+            data[dst+i] = previous = value!=0 ? value : previous;
+        }
+    }
+    /**
+     * copies count values of a field from position from into data at dst as
+     * they are stored, zeros included
+     */
+    void copyRaw(int from, Field field, double[] data, int dst, int count)
+    {
+        int k = offset+from;
+        if(mapped!=null)
+        {
+            DoubleBuffer src = mapped.columns[field.ordinal()];
+            for(int i=0;i<count;i++)
+            {
+                data[dst+i] = src.get(k+i);
+            }
+            return;
+        }
+        System.arraycopy(field.of(this), k, data, dst, count);
+    }
+
+    /**
+     * the value that repairs a zero of field at the absolute position k when
+     * it starts a window, from the other prices of the bar: the highest for
+     * high, the lowest non zero for low and the average of the non zero ones
+     * for open and close. Scalars only, so reads do not allocate.
+     */
+    private double first(Field field, int k)
+    {
+        switch(field)
+        {
+            case High:
+                return Math.max(Math.max(raw(0, k), raw(2, k)), raw(3, k));
+            case Low:
+                return minNonZero(raw(0, k), raw(2, k), raw(3, k));
+            case Open:
+                return avgNonZero(raw(1, k), raw(2, k), raw(3, k));
+            case Close:
+                return avgNonZero(raw(0, k), raw(1, k), raw(2, k));
+            default:
+                return 0;
+        }
+    }
+    private static double minNonZero(double a, double b, double c)
+    {
+        double min = a;
+        if(b!=0 && (min==0 || b<min))
+        {
+            min = b;
+        }
+        if(c!=0 && (min==0 || c<min))
+        {
+            min = c;
+        }
+        return min;
+    }
+    private static double avgNonZero(double a, double b, double c)
+    {
+        double sum = 0;
+        int count = 0;
+        if(a!=0)
+        {
+            sum += a;
+            count++;
+        }
+        if(b!=0)
+        {
+            sum += b;
+            count++;
+        }
+        if(c!=0)
+        {
+            sum += c;
+            count++;
+        }
+        return count>0 ? sum/count : 0;
+    }
+
+    /**
+     * dividends paid after position i up to position last, both in [0,size)
+     */
+    double dividendsAfter(int i, int last)
+    {
+        if(mapped!=null)
+        {
+            Dividends d = mapped.dividends();
+            return d.upTo(offset+last)-d.upTo(offset+i);
+        }
+        return cumDividend[offset+last]-cumDividend[offset+i];
+    }
+
+    /**
+     * a private copy with room for capacity bars that can be modified before being published
+     */
+    QuoteColumns copy(int capacity)
+    {
+        QuoteColumns other = new QuoteColumns(Math.max(capacity, size));
+        if(mapped!=null)
+        {
+            for(int i=0;i<size;i++)
+            {
+                other.copyRow(this, i);
+            }
+            other.accumulate(0);
+            return other;
+        }
+        other.size = size;
+        System.arraycopy(keys, offset, other.keys, 0, size);
+        System.arraycopy(open, offset, other.open, 0, size);
+        System.arraycopy(high, offset, other.high, 0, size);
+        System.arraycopy(low, offset, other.low, 0, size);
+        System.arraycopy(close, offset, other.close, 0, size);
+        System.arraycopy(volume, offset, other.volume, 0, size);
+        System.arraycopy(dividend, offset, other.dividend, 0, size);
+        other.accumulate(0);
+        return other;
+    }
+
+    /**
+     * a read-only slice with the bars [from,to) sharing the arrays
+     */
+    QuoteColumns slice(int from, int to)
+    {
+        QuoteColumns other = new QuoteColumns(this, to-from);
+        other.offset += from;
+        other.zeros = null;
+        other.counted = null;
+        return other;
+    }
+
+    /**
+     * a new version with the same bars sharing the arrays
+     */
+    QuoteColumns share()
+    {
+        return new QuoteColumns(this, size);
+    }
+
+    /**
+     * a new version with the bar added after the last one, sharing the
+     * arrays while there is room for it
+     */
+    QuoteColumns append(Quote quote)
+    {
+        return append(epochDay(quote.date), quote.open, quote.high, quote.low, quote.close, quote.volume, quote.dividend);
+    }
+    QuoteColumns append(long key, double open, double high, double low, double close, double volume, double dividend)
+    {
+        assert size==0 || key>keys[size-1] : "append out of order";
+        QuoteColumns other = size<keys.length ? new QuoteColumns(this, size) : copy(size + (size>>1) + 1);
+        other.set(size, key, open, high, low, close, volume, dividend);
+        other.size++;
+        other.accumulate(size);
+        return other;
+    }
+
+    /**
+     * a new version with the dividend of bar i replaced, only the dividend
+     * columns are copied
+     */
+    QuoteColumns withDividend(int i, double value)
+    {
+        QuoteColumns other = new QuoteColumns(this, size);
+        other.dividend = dividend.clone();
+        other.cumDividend = cumDividend.clone();
+        other.setDividend(i, value);
+        return other;
+    }
+
+    /**
+     * this instance if the keys are strictly ascending, otherwise a sorted copy
+     * where the last bar of a repeated key wins, as sequential puts would do
+     */
+    QuoteColumns sorted()
+    {
+        int i = 1;
+        while(i<size && keys[i-1]<keys[i])
+        {
+            i++;
+        }
+        if(i>=size)
+        {
+            accumulate(0);
+            return this;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for(int k=0;k<size;k++)
+        {
+            min = Math.min(min, keys[k]);
+            max = Math.max(max, keys[k]);
+        }
+        int[] order = new int[size];
+        if(max-min>=0 && max-min<=Integer.MAX_VALUE)
+        {
+            //key in the high half and position in the low one, so ties keep the input order
+            long[] packed = new long[size];
+            for(int k=0;k<size;k++)
+            {
+                packed[k] = ((keys[k]-min)<<32) | k;
+            }
+            Arrays.sort(packed);
+            for(int k=0;k<size;k++)
+            {
+                order[k] = (int) packed[k];
+            }
+        }
+        else
+        {
+            //keys spread over more than 2^31 units, not seen in real bars
+            Integer[] boxed = new Integer[size];
+            for(int k=0;k<size;k++)
+            {
+                boxed[k] = k;
+            }
+            Arrays.sort(boxed, (a,b) -> Long.compare(keys[a], keys[b]));
+            for(int k=0;k<size;k++)
+            {
+                order[k] = boxed[k];
+            }
+        }
+        QuoteColumns other = new QuoteColumns(size);
+        for(int k=0;k<size;k++)
+        {
+            if(k+1<size && keys[order[k+1]]==keys[order[k]])
+            {
+                continue;
+            }
+            other.copyRow(this, order[k]);
+        }
+        other.accumulate(0);
+        return other;
+    }
+
+    /**
+     * true if every bar of other comes after the last bar of this instance
+     */
+    boolean endsBefore(QuoteColumns other)
+    {
+        return size==0 || other.size==0 || key(size-1)<other.key(0);
+    }
+
+    /**
+     * a new version with the bars of other, which must be sorted, resolving the
+     * bars of the same key with the policy. If other starts after the last bar
+     * it is appended sharing the arrays while there is room, as {@link #append}
+     * does, otherwise both are merged in a single pass.
+     * @return this instance if nothing changed
+     */
+    QuoteColumns merge(QuoteColumns src, MergePolicy policy)
+    {
+        if(src.size==0)
+        {
+            return this;
+        }
+        int n = size+src.size;
+        if(endsBefore(src))
+        {
+            QuoteColumns other = n<=keys.length ? new QuoteColumns(this, size) : copy(Math.max(n, size + (size>>1) + 1));
+            other.copyRows(src, 0, src.size);
+            other.accumulate(size);
+            return other;
+        }
+        QuoteColumns other = new QuoteColumns(n);
+        boolean changed = false;
+        int i = 0;
+        int j = 0;
+        while(i<size || j<src.size)
+        {
+            if(j==src.size || (i<size && key(i)<src.key(j)))
+            {
+                other.copyRow(this, i++);
+            }
+            else if(i==size || src.key(j)<key(i))
+            {
+                other.copyRow(src, j++);
+                changed = true;
+            }
+            else
+            {
+                other.copyRow(this, i++);
+                changed |= other.resolve(src, j++, policy);
+            }
+        }
+        if(!changed)
+        {
+            return this;
+        }
+        other.accumulate(0);
+        return other;
+    }
+    /**
+     * applies the policy to the last bar with bar j of src, that has the same key
+     * @return true if the last bar changed
+     */
+    private boolean resolve(QuoteColumns src, int j, MergePolicy policy)
+    {
+        int i = size-1;
+        int k = src.offset+j;
+        switch(policy)
+        {
+            case Overwrite:
+                boolean changed = open[i]!=src.raw(0, k) || high[i]!=src.raw(1, k) || low[i]!=src.raw(2, k) || close[i]!=src.raw(3, k) || volume[i]!=src.raw(4, k) || dividend[i]!=src.raw(DIVIDEND, k);
+                size--;
+                copyRow(src, j);
+                return changed;
+            case PreferNonZero:
+                return fillZero(open, i, src.raw(0, k)) | fillZero(high, i, src.raw(1, k)) | fillZero(low, i, src.raw(2, k))
+                     | fillZero(close, i, src.raw(3, k)) | fillZero(volume, i, src.raw(4, k)) | fillZero(dividend, i, src.raw(DIVIDEND, k));
+            case SumDividends:
+                dividend[i] += src.raw(DIVIDEND, k);
+                return src.raw(DIVIDEND, k)!=0;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean fillZero(double[] dst, int i, double value)
+    {
+        if(dst[i]==0 && value!=0)
+        {
+            dst[i] = value;
+            return true;
+        }
+        return false;
+    }
+
+    void ensureCapacity(int capacity)
+    {
+        if(capacity>keys.length)
+        {
+            int n = Math.max(capacity, keys.length + (keys.length>>1) + 1);
+            keys     = Arrays.copyOf(keys, n);
+            open     = Arrays.copyOf(open, n);
+            high     = Arrays.copyOf(high, n);
+            low      = Arrays.copyOf(low, n);
+            close    = Arrays.copyOf(close, n);
+            volume   = Arrays.copyOf(volume, n);
+            dividend = Arrays.copyOf(dividend, n);
+            cumDividend = Arrays.copyOf(cumDividend, n);
+            //a new outer array, the old one may be shared with published versions
+            double[][] grown = new double[FIELDS.length][];
+            for(int f=0;f<FIELDS.length;f++)
+            {
+                grown[f] = Arrays.copyOf(fixed[f], n);
+            }
+            fixed = grown;
+        }
+    }
+}
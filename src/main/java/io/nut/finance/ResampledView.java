@@ -0,0 +1,110 @@
+/*
+ * ResampledView.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.base.time.JavaTime;
+import io.nut.finance.StockQuotes.Timeframe;
+import java.time.LocalDate;
+
+/**
+ * Daily bars aggregated by timeframe, fed in date order. The last bucket is
+ * updated in place in O(1) until a snapshot of it is published, the first
+ * update after that works on a copy so published snapshots never change.
+ * Not thread safe, the owner serializes the calls.
+ *
+ * @author franci
+ */
+final class ResampledView
+{
+    private final Timeframe timeframe;
+    private final int days;
+    private QuoteColumns columns = new QuoteColumns();
+    //first epoch day after the last bucket
+    private long end = Long.MIN_VALUE;
+    //bars visible in published snapshots, they cannot be modified in place
+    private int published;
+
+    /**
+     * @param timeframe the bucket timeframe or null for buckets of days calendar days
+     */
+    ResampledView(Timeframe timeframe, int days)
+    {
+        this.timeframe = timeframe;
+        this.days = days;
+    }
+
+    /**
+     * aggregates the bars [from,to) of src, that must come after every bar already added
+     */
+    void add(QuoteColumns src, int from, int to)
+    {
+        for(int i=from;i<to;i++)
+        {
+            boolean merge = src.key(i)<end;
+            if(!merge)
+            {
+                end = bucketEnd(timeframe, days, src.key(i));
+            }
+            else if(columns.size<=published)
+            {
+                columns = columns.copy(columns.keys.length);
+                published = 0;
+            }
+            columns.aggregate(src, i, merge);
+        }
+    }
+
+    /**
+     * a snapshot of the current buckets
+     */
+    QuoteColumns publish()
+    {
+        published = columns.size;
+        return columns.share();
+    }
+
+    /**
+     * first epoch day after the bucket holding day
+     */
+    static long bucketEnd(Timeframe timeframe, int days, long day)
+    {
+        if(timeframe==null)
+        {
+            return (Math.floorDiv(day, days)+1)*days;
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        switch(timeframe)
+        {
+            case Daily:
+                return day+1;
+            case Weekly:
+                return JavaTime.atStartOfWeek(date).plusWeeks(1).toEpochDay();
+            case Monthly:
+                return date.withDayOfMonth(1).plusMonths(1).toEpochDay();
+            case Quarterly:
+                return date.withDayOfMonth(1).withMonth((date.getMonthValue()-1)/3*3+1).plusMonths(3).toEpochDay();
+            case Yearly:
+                return date.withDayOfYear(1).plusYears(1).toEpochDay();
+            default:
+                throw new IllegalArgumentException("unsupported timeframe "+timeframe);
+        }
+    }
+}
@@ -28,20 +28,15 @@ import io.nut.finance.indicator.MovingAverageConvergenceDivergence;
 import io.nut.finance.indicator.SimpleMovingAverage;
 import io.nut.base.math.Nums;
 import io.nut.base.math.Round;
-import io.nut.base.time.JavaTime;
 import io.nut.base.util.Sorts;
 import io.nut.base.util.Utils;
 import java.time.LocalDate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  *
@@ -51,15 +46,41 @@ public class StockQuotes
 {
     public enum Timeframe
     {
-        Hourly, Daily, Weekly, Monthly, Yearly
+        Hourly, Daily, Weekly, Monthly, Quarterly, Yearly
+    }
+    /**
+     * how merge resolves two bars of the same day
+     */
+    public enum MergePolicy
+    {
+        /** the existing bar is kept */
+        Keep,
+        /** the incoming bar replaces the existing one */
+        Overwrite,
+        /** each zero field of the existing bar takes the incoming value */
+        PreferNonZero,
+        /** the existing bar is kept adding the incoming dividend to its own */
+        SumDividends
     }
     public enum Field
     {
-        Open(getOpen), High(getHigh), Low(getLow), Close(getClose), Volume(getVolume);
-        final GetDouble get;
-        Field(GetDouble get)
+        Open, High, Low, Close, Volume;
+
+        double[] of(QuoteColumns columns)
         {
-            this.get = get;
+            switch(this)
+            {
+                case Open:
+                    return columns.open;
+                case High:
+                    return columns.high;
+                case Low:
+                    return columns.low;
+                case Close:
+                    return columns.close;
+                default:
+                    return columns.volume;
+            }
         }
     }
     public static class Quote implements Comparable<Quote>
@@ -102,70 +123,20 @@ public class StockQuotes
             return this.date.compareTo(other.date);
         }
 
-        private Quote merge(Quote item)
-        {
-            boolean lteq = this.date.compareTo(item.date)<=0;
-            LocalDate dt = lteq ? this.date : item.date;
-            double op = lteq ? this.open : item.open;
-            double hi = Nums.maxOf(this.high, item.high);
-            double lo = Nums.minOf(this.low, item.low);
-            double cl = lteq ? item.close : this.close;
-            double vol = this.volume + item.volume;
-            double div = this.dividend + item.dividend;
-            return new Quote(dt, op, hi, lo, cl, vol, div);
-        }
-        
-    }
-    private interface GetDouble
-    {
-        double get(Quote quote);
     }
-    private static final GetDouble getOpen = new GetDouble()
-    {
-        @Override
-        public double get(Quote quote)
-        {
-            return quote.open;
-        }
-    };
-    private static final GetDouble getHigh = new GetDouble()
-    {
-        @Override
-        public double get(Quote quote)
-        {
-            return quote.high;
-        }
-    };
-    private static final GetDouble getLow = new GetDouble()
-    {
-        @Override
-        public double get(Quote quote)
-        {
-            return quote.low;
-        }
-    };
-    private static final GetDouble getClose = new GetDouble()
-    {
-        @Override
-        public double get(Quote quote)
-        {
-            return quote.close;
-        }
-    };
-    private static final GetDouble getVolume = new GetDouble()
-    {
-        @Override
-        public double get(Quote quote)
-        {
-            return quote.volume;
-        }
-    };
-    
     private final Object lock = new Object();
     private final String ticker;
-    private final TreeMap<LocalDate,Quote> map = new TreeMap<>();
+    //immutable snapshot, replaced by writers while holding the lock
+    private volatile QuoteColumns columns;
+    private final boolean readOnly;
+    //aggregated views by timeframe, created on demand and kept up to date by the writers
+    private final ResampledView[] views = new ResampledView[Timeframe.values().length];
+    //last published snapshot of each view, replaced as a whole and emptied by the writers
+    private volatile QuoteColumns[] published = NO_VIEWS;
+    private static final QuoteColumns[] NO_VIEWS = new QuoteColumns[Timeframe.values().length];
     private volatile boolean fixZeros = true;
     private volatile boolean applyDividend;
+    private volatile boolean fixedPoint;
     private final int decimals;
     private final double step;
     private final Round roundCeiling;
@@ -181,6 +152,12 @@ public class StockQuotes
     }
     public StockQuotes(String ticker, boolean applyDividend, int decimals, double step)
     {
+        this(ticker, applyDividend, decimals, step, new QuoteColumns(), false);
+    }
+    StockQuotes(String ticker, boolean applyDividend, int decimals, double step, QuoteColumns columns, boolean readOnly)
+    {
+        this.columns = columns;
+        this.readOnly = readOnly;
         this.ticker = ticker;
         this.applyDividend = applyDividend;
         this.decimals = decimals;
@@ -198,22 +175,139 @@ public class StockQuotes
     {
         this.applyDividend = applyDividend;
     }
+
+    public boolean isApplyDividend()
+    {
+        return applyDividend;
+    }
+
+    public int getDecimals()
+    {
+        return decimals;
+    }
+
+    public double getStep()
+    {
+        return step;
+    }
+
+    /**
+     * In fixed-point mode the SafeZone and Chandelier stops take the prices as
+     * long ticks of step, rounded to the nearest tick, and compute the stop
+     * levels with integer arithmetic only. The step must be a whole number of
+     * units of the last decimal.
+     * <p>
+     * The bars are still stored as doubles, only the range read for a stop is
+     * converted to ticks, so every other reader keeps the columns as they are
+     * and the mode can be switched at any time.
+     */
+    public void setFixedPoint(boolean fixedPoint)
+    {
+        if(fixedPoint && stepUnits()<=0)
+        {
+            throw new IllegalStateException("step "+step+" is not a multiple of 10^-"+decimals);
+        }
+        this.fixedPoint = fixedPoint;
+    }
+
+    public boolean isFixedPoint()
+    {
+        return fixedPoint;
+    }
+
+    /**
+     * step in units of the last decimal, 0 if it is not a whole number of them
+     */
+    private long stepUnits()
+    {
+        if(decimals<0 || decimals>18)
+        {
+            return 0;
+        }
+        double units = step*Math.pow(10, decimals);
+        long rounded = Math.round(units);
+        return rounded>0 && Math.abs(units-rounded)<1e-6 ? rounded : 0;
+    }
+    private long[] toTicks(double[] price)
+    {
+        long[] ticks = new long[price.length];
+        for(int i=0;i<ticks.length;i++)
+        {
+            ticks[i] = Math.round(price[i]/step);
+        }
+        return ticks;
+    }
+    /**
+     * the stop levels of run back in prices, each one the nearest double to its decimal value
+     */
+    private TrailingStops toPrices(TrailingStops.Ticks run)
+    {
+        long units = stepUnits();
+        double scale = Math.pow(10, decimals);
+        TrailingStops prices = new TrailingStops(run.stop.length, run.value*units/scale);
+        for(int i=0;i<run.stop.length;i++)
+        {
+            prices.stop[i] = run.stop[i]*units/scale;
+        }
+        prices.exit = run.exit;
+        prices.exitValue = run.exitValue*units/scale;
+        return prices;
+    }
+
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+    private void checkWritable()
+    {
+        if(readOnly)
+        {
+            throw new UnsupportedOperationException("read-only StockQuotes");
+        }
+    }
+    /**
+     * the current bars in arrays, those read in place from a file are copied
+     */
+    QuoteColumns snapshot()
+    {
+        return columns.heap();
+    }
     
     public boolean add(Quote e)
     {
+        checkWritable();
+        long key = QuoteColumns.epochDay(e.date);
         synchronized(lock)
         {
-            return this.map.put(e.date, e)!=null;
+            QuoteColumns cols = this.columns;
+            if(cols.size==0 || key>cols.key(cols.size-1))
+            {
+                QuoteColumns next = cols.append(e);
+                this.columns = next;
+                appended(next, cols.size);
+                return false;
+            }
+            QuoteColumns next = cols.copy(cols.size+1);
+            boolean ret = next.put(e);
+            this.columns = next;
+            invalidateViews();
+            return ret;
         }
     }
     public boolean addDividend(LocalDate date, double dividend)
     {
+        checkWritable();
         synchronized(lock)
         {
-            Quote quote = this.map.get(date);
-            if(quote!=null)
+            QuoteColumns cols = this.columns;
+            int i = cols.indexOf(QuoteColumns.epochDay(date));
+            if(i>=0)
             {
-                this.map.put(quote.date, quote.dividend(dividend));
+                if(cols.dividend[i]!=dividend)
+                {
+                    this.columns = cols.withDividend(i, dividend);
+                    invalidateViews();
+                }
                 return true;
             }
             return false;
@@ -223,263 +317,497 @@ public class StockQuotes
     {
         return add(new Quote(date, open, high, low, close, volume, 0));
     }
-    
-    private double[] getValue(LocalDate start, LocalDate end, GetDouble getDouble, boolean reverseOrder)
-    {
-        LocalDate startTime = start!=null ? start : LocalDate.MIN;
-        LocalDate endTime   = end!=null   ? end   : LocalDate.MAX;
-       
-        Quote[] quotes = this.map.subMap(startTime, true, endTime, true).values().toArray(new Quote[0]);
-        Arrays.sort(quotes);
-        boolean hasDiv = false;
-        double[] data = new double[quotes.length];
-        double[] div  = this.applyDividend ? new double[data.length] : null;
-        for(int i=0;i<data.length;i++)
-        {
-            Quote item = quotes[i];
-            double val = data[i] = getDouble.get(item);
-            if(val==0 && fixZeros)
-            {
-                if(i>0)
-                {
-                    data[i] = data[i-1];
-                }
-                else if(getDouble==getHigh)
-                {
-                    data[i] = Nums.maxOf(item.open,item.low,item.close);
-                }
-                else if(getDouble==getLow)
-                {
-                    data[i] = Nums.min(Utils.exclude(0.0, item.open,item.low,item.close));
-                }
-                else if(getDouble==getOpen)
-                {
-                    data[i] = Nums.avg(Utils.exclude(0.0, item.high,item.low,item.close));
-                }
-                else if(getDouble==getClose)
-                {
-                    data[i] = Nums.avg(Utils.exclude(0.0, item.open,item.high,item.low));
-                }
-            }
-            if(div!=null)
-            {
-                div[i]  = item.dividend;
-                hasDiv |= div[i]!=0;
-            }
-        }        
-        if(hasDiv)
+
+    /**
+     * adds the quotes taking the lock once, with the same result as calling
+     * add for each one in order. Quotes sorted by date, the usual order of
+     * vendor files, are appended in amortized O(1) each
+     * @return the number of dates that were not present
+     */
+    public int addAll(Quote... quotes)
+    {
+        QuoteColumns batch = new QuoteColumns(quotes.length);
+        for(Quote e : quotes)
         {
-            adjust(data, div);        
+            batch.add(e.date, e.open, e.high, e.low, e.close, e.volume, e.dividend);
         }
-        if(reverseOrder)
+        return addAll(batch);
+    }
+    /**
+     * same as addAll(Quote...) for bars given by columns, without dividend
+     * @return the number of dates that were not present
+     */
+    public int addAll(LocalDate[] date, double[] open, double[] high, double[] low, double[] close, double[] volume)
+    {
+        int n = date.length;
+        if(open.length!=n || high.length!=n || low.length!=n || close.length!=n || volume.length!=n)
         {
-            Sorts.reverse(data);
+            throw new IllegalArgumentException("columns of different length");
         }
-        return data;
+        QuoteColumns batch = new QuoteColumns(n);
+        for(int i=0;i<n;i++)
+        {
+            batch.add(date[i], open[i], high[i], low[i], close[i], volume[i], 0);
+        }
+        return addAll(batch);
     }
-
-    static void adjust(double[] data, double[] div)
+    /**
+     * adds the bars parsed before a parser failed with ex, a failure adding
+     * them is attached to ex so it does not hide the original one
+     */
+    void addPartial(QuoteColumns batch, Exception ex)
     {
-        double acum = 0.0;
-        for(int i=data.length-1;i>=0;i--)
+        try
         {
-            data[i] -= acum;
-            acum += div[i];
+            addAll(batch);
+        }
+        catch(RuntimeException other)
+        {
+            ex.addSuppressed(other);
         }
     }
-    private double[] getValue(int count, LocalDate end, GetDouble getDouble, boolean reverseOrder)
+    int addAll(QuoteColumns batch)
     {
-        SortedMap<LocalDate, Quote> sub = end!=null ? this.map.subMap(this.map.firstKey(), true, end, true) : this.map;
-        
-        ArrayList<Quote> quotes = new ArrayList<>();
-        for(Map.Entry<LocalDate, Quote> entry : sub.entrySet())
+        checkWritable();
+        batch = batch.sorted();
+        synchronized(lock)
         {
-            quotes.add(entry.getValue());
+            QuoteColumns cols = this.columns;
+            publish(cols, cols.merge(batch, MergePolicy.Overwrite), batch);
+            return this.columns.size-cols.size;
         }
-        
-        Collections.sort(quotes);
-        while(quotes.size()>count)
+    }
+
+    /**
+     * feeds the views with the bars appended from position from, holding the lock
+     */
+    private void appended(QuoteColumns cols, int from)
+    {
+        for(ResampledView view : views)
         {
-            quotes.remove(0);
-        }
-        
-        boolean hasDiv = false;
-        double[] data = new double[quotes.size()];
-        double[] div  = this.applyDividend ? new double[data.length] : null;
-        for(int i=0;i<data.length;i++)
-        {
-            Quote item = quotes.get(i);
-            double val = data[i] = getDouble.get(item);
-            if(val==0 && fixZeros)
-            {
-                if(i>0)
-                {
-                    data[i] = data[i-1];
-                }
-                else if(getDouble==getHigh)
-                {
-                    data[i] = Nums.maxOf(item.open,item.low,item.close);
-                }
-                else if(getDouble==getLow)
-                {
-                    data[i] = Nums.min(Utils.exclude(0.0, item.open,item.low,item.close));
-                }
-                else if(getDouble==getOpen)
-                {
-                    data[i] = Nums.avg(Utils.exclude(0.0, item.high,item.low,item.close));
-                }
-                else if(getDouble==getClose)
-                {
-                    data[i] = Nums.avg(Utils.exclude(0.0, item.open,item.high,item.low));
-                }
-            }
-            if(div!=null)
+            if(view!=null)
             {
-                div[i]  = item.dividend;
-                hasDiv |= div[i]!=0;
+                view.add(cols, from, cols.size);
             }
         }
-        if(hasDiv)
+        published = NO_VIEWS;
+    }
+    /**
+     * drops the views after a change that is not an append, holding the lock
+     */
+    private void invalidateViews()
+    {
+        Arrays.fill(views, null);
+        published = NO_VIEWS;
+    }
+
+    private static int startIndex(QuoteColumns cols, LocalDate start)
+    {
+        return start!=null ? cols.ceiling(QuoteColumns.epochDay(start)) : 0;
+    }
+    private static int endIndex(QuoteColumns cols, LocalDate end)
+    {
+        return end!=null ? cols.higher(QuoteColumns.epochDay(end)) : cols.size;
+    }
+    private static void checkRange(LocalDate start, LocalDate end)
+    {
+        if(start!=null && end!=null && start.isAfter(end))
         {
-            adjust(data, div);        
+            throw new IllegalArgumentException("fromKey > toKey");
         }
+    }
+    
+    private double[] getValue(LocalDate start, LocalDate end, Field field, boolean reverseOrder)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getValue(cols, startIndex(cols, start), endIndex(cols, end), field, reverseOrder);
+    }
+    private double[] getValue(int count, LocalDate end, Field field, boolean reverseOrder)
+    {
+        QuoteColumns cols = this.columns;
+        int to = endIndex(cols, end);
+        return getValue(cols, Math.max(to-count, 0), to, field, reverseOrder);
+    }
+    double[] getValue(QuoteColumns cols, int from, int to, Field field, boolean reverseOrder)
+    {
+        double[] data = new double[Math.max(to-from, 0)];
+        getValue(cols, from, to, field, reverseOrder, data, 0);
+        return data;
+    }
+    private int getValue(LocalDate start, LocalDate end, Field field, boolean reverseOrder, double[] dst, int offset)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getValue(cols, startIndex(cols, start), endIndex(cols, end), field, reverseOrder, dst, offset);
+    }
+    private int getValue(int count, LocalDate end, Field field, boolean reverseOrder, double[] dst, int offset)
+    {
+        QuoteColumns cols = this.columns;
+        int to = endIndex(cols, end);
+        return getValue(cols, Math.max(to-count, 0), to, field, reverseOrder, dst, offset);
+    }
+    private int getValue(QuoteColumns cols, int from, int to, Field field, boolean reverseOrder, double[] dst, int offset)
+    {
+        int count = Math.max(to-from, 0);
+        checkBuffer(dst.length, offset, count);
+        fill(cols, from, field, dst, offset, count);
+        adjustDividends(cols, from, dst, offset, count);
         if(reverseOrder)
         {
-            Sorts.reverse(data);
+            reverse(dst, offset, count);
         }
-        return data;
+        return count;
     }
-
-    public LocalDate[] getDate(LocalDate start, LocalDate end, boolean reverseOrder)
+    private static void checkBuffer(int length, int offset, int count)
+    {
+        if(offset<0 || count>length-offset)
+        {
+            throw new IndexOutOfBoundsException("offset="+offset+" count="+count+" length="+length);
+        }
+    }
+    private void fill(QuoteColumns cols, int from, Field field, double[] data, int offset, int count)
     {
-        SortedMap<LocalDate, Quote> sub = this.map;
-        if(start!=null && end!=null)
+        if(!fixZeros)
         {
-            sub = this.map.subMap(start, true, end, true);
+            cols.copyRaw(from, field, data, offset, count);
+            return;
+        }
+        cols.fill(from, field, data, offset, count);
+    }
+    private void adjustDividends(QuoteColumns cols, int from, double[] data, int offset, int count)
+    {
+        int last = from+count-1;
+        if(this.applyDividend && count>0 && cols.dividendsAfter(from, last)!=0)
+        {
+            for(int i=0;i<count;i++)
+            {
+                data[offset+i] -= cols.dividendsAfter(from+i, last);
+            }
         }
-        else if(start!=null)
+    }
+    private static void reverse(double[] data, int offset, int count)
+    {
+        for(int i=offset, j=offset+count-1;i<j;i++,j--)
+        {
+            double tmp = data[i];
+            data[i] = data[j];
+            data[j] = tmp;
+        }
+    }
+
+    static void adjust(double[] data, double[] div)
+    {
+        double acum = 0.0;
+        for(int i=data.length-1;i>=0;i--)
         {
-            sub = this.map.tailMap(start, true);
+            data[i] -= acum;
+            acum += div[i];
         }
-        else if(end!=null)
+    }
+
+    private static LocalDate[] getDate(QuoteColumns cols, int from, int to, boolean reverseOrder)
+    {
+        LocalDate[] dates = new LocalDate[Math.max(to-from, 0)];
+        for(int i=0;i<dates.length;i++)
         {
-            sub = this.map.headMap(end, true);
+            dates[i] = cols.date(from+i);
         }
-        LocalDate[] dates = sub.keySet().toArray(new LocalDate[0]);
         if(reverseOrder)
         {
             Sorts.reverse(dates);
         }
         return dates;
     }
+    public LocalDate[] getDate(LocalDate start, LocalDate end, boolean reverseOrder)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getDate(cols, startIndex(cols, start), endIndex(cols, end), reverseOrder);
+    }
     public double[] getOpen(LocalDate start, LocalDate end, boolean reverseOrder)
     {
-        return getValue(start, end, getOpen, reverseOrder);
+        return getValue(start, end, Field.Open, reverseOrder);
     }
     public double[] getHigh(LocalDate start, LocalDate end, boolean reverseOrder)
     {
-        return getValue(start, end, getHigh, reverseOrder);
+        return getValue(start, end, Field.High, reverseOrder);
     }
     public double[] getLow(LocalDate start, LocalDate end, boolean reverseOrder)
     {
-        return getValue(start, end, getLow, reverseOrder);
+        return getValue(start, end, Field.Low, reverseOrder);
     }
     public double[] getClose(LocalDate start, LocalDate end, boolean reverseOrder)
     {
-        return getValue(start, end, getClose, reverseOrder);
+        return getValue(start, end, Field.Close, reverseOrder);
     }
     public double[] getVomume(LocalDate start, LocalDate end, boolean reverseOrder)
     {
-        return getValue(start, end, getVolume, reverseOrder);
+        return getValue(start, end, Field.Volume, reverseOrder);
     }
 
     public LocalDate[] getDate(int count, LocalDate end, boolean reverseOrder)
     {
-        SortedMap<LocalDate, Quote> sub = (end!=null) ? this.map.headMap(end, true) : this.map;
-        LocalDate[] dates = sub.keySet().toArray(new LocalDate[0]);
-        dates = count<dates.length ? Arrays.copyOfRange(dates, dates.length-count, dates.length) : dates;
-        if(reverseOrder)
-        {
-            Sorts.reverse(dates);
-        }
-        return dates;
+        QuoteColumns cols = this.columns;
+        int to = endIndex(cols, end);
+        return getDate(cols, Math.max(to-count, 0), to, reverseOrder);
     }
     public double[] getOpen(int count, LocalDate end, boolean reverseOrder)
     {
-        return getValue(count, end, getOpen, reverseOrder);
+        return getValue(count, end, Field.Open, reverseOrder);
     }
     public double[] getHigh(int count, LocalDate end, boolean reverseOrder)
     {
-        return getValue(count, end, getHigh, reverseOrder);
+        return getValue(count, end, Field.High, reverseOrder);
     }
     public double[] getLow(int count, LocalDate end, boolean reverseOrder)
     {
-        return getValue(count, end, getLow, reverseOrder);
+        return getValue(count, end, Field.Low, reverseOrder);
     }
     public double[] getClose(int count, LocalDate end, boolean reverseOrder)
     {
-        return getValue(count, end, getClose, reverseOrder);
+        return getValue(count, end, Field.Close, reverseOrder);
     }
     public double[] getVomume(int count, LocalDate end, boolean reverseOrder)
     {
-        return getValue(count, end, getVolume, reverseOrder);
+        return getValue(count, end, Field.Volume, reverseOrder);
     }
     
-    private double[] getIndicator1st(LocalDate start, LocalDate end, GetDouble getDouble, Indicator indicator, boolean reverseOrder)
+
+    private static int getDate(QuoteColumns cols, int from, int to, boolean reverseOrder, int[] dst, int offset)
+    {
+        int count = Math.max(to-from, 0);
+        checkBuffer(dst.length, offset, count);
+        for(int i=0;i<count;i++)
+        {
+            dst[offset+i] = (int) cols.key(from+i);
+        }
+        if(reverseOrder)
+        {
+            for(int i=offset, j=offset+count-1;i<j;i++,j--)
+            {
+                int tmp = dst[i];
+                dst[i] = dst[j];
+                dst[j] = tmp;
+            }
+        }
+        return count;
+    }
+    /**
+     * Writes the epoch days of the bars between start and end (both included)
+     * into dst from offset, without allocating.
+     * @return the number of days written
+     * @throws IndexOutOfBoundsException if they do not fit in dst
+     */
+    public int getDate(LocalDate start, LocalDate end, boolean reverseOrder, int[] dst, int offset)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getDate(cols, startIndex(cols, start), endIndex(cols, end), reverseOrder, dst, offset);
+    }
+    /**
+     * Writes the values of the bars between start and end (both included)
+     * into dst from offset, the same values the allocating getter returns.
+     * @return the number of values written
+     * @throws IndexOutOfBoundsException if they do not fit in dst
+     */
+    public int getOpen(LocalDate start, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(start, end, Field.Open, reverseOrder, dst, offset);
+    }
+    public int getHigh(LocalDate start, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(start, end, Field.High, reverseOrder, dst, offset);
+    }
+    public int getLow(LocalDate start, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(start, end, Field.Low, reverseOrder, dst, offset);
+    }
+    public int getClose(LocalDate start, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(start, end, Field.Close, reverseOrder, dst, offset);
+    }
+    public int getVomume(LocalDate start, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(start, end, Field.Volume, reverseOrder, dst, offset);
+    }
+
+    /**
+     * Writes the epoch days of the last count bars until end (included) into
+     * dst from offset, without allocating.
+     * @return the number of days written
+     * @throws IndexOutOfBoundsException if they do not fit in dst
+     */
+    public int getDate(int count, LocalDate end, boolean reverseOrder, int[] dst, int offset)
+    {
+        QuoteColumns cols = this.columns;
+        int to = endIndex(cols, end);
+        return getDate(cols, Math.max(to-count, 0), to, reverseOrder, dst, offset);
+    }
+    /**
+     * Writes the values of the last count bars until end (included) into dst
+     * from offset, the same values the allocating getter returns.
+     * @return the number of values written
+     * @throws IndexOutOfBoundsException if they do not fit in dst
+     */
+    public int getOpen(int count, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(count, end, Field.Open, reverseOrder, dst, offset);
+    }
+    public int getHigh(int count, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(count, end, Field.High, reverseOrder, dst, offset);
+    }
+    public int getLow(int count, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(count, end, Field.Low, reverseOrder, dst, offset);
+    }
+    public int getClose(int count, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(count, end, Field.Close, reverseOrder, dst, offset);
+    }
+    public int getVomume(int count, LocalDate end, boolean reverseOrder, double[] dst, int offset)
+    {
+        return getValue(count, end, Field.Volume, reverseOrder, dst, offset);
+    }
+
+    /**
+     * A window of consecutive bars stored as one array per field, fields not
+     * requested are null.
+     */
+    public static class Bars
+    {
+        public final int length;
+        public final LocalDate[] date;
+        public final double[] open;
+        public final double[] high;
+        public final double[] low;
+        public final double[] close;
+        public final double[] volume;
+
+        Bars(LocalDate[] date, double[] open, double[] high, double[] low, double[] close, double[] volume)
+        {
+            this.length = date.length;
+            this.date = date;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+        public double[] get(Field field)
+        {
+            switch(field)
+            {
+                case Open:
+                    return open;
+                case High:
+                    return high;
+                case Low:
+                    return low;
+                case Close:
+                    return close;
+                default:
+                    return volume;
+            }
+        }
+    }
+    private Bars getBars(QuoteColumns cols, int from, int to, Field[] fields)
+    {
+        int count = Math.max(to-from, 0);
+        LocalDate[] date = new LocalDate[count];
+        for(int i=0;i<count;i++)
+        {
+            date[i] = cols.date(from+i);
+        }
+        double[][] data = new double[Field.values().length][];
+        for(Field field : fields)
+        {
+            if(data[field.ordinal()]==null)
+            {
+                double[] values = data[field.ordinal()] = new double[count];
+                fill(cols, from, field, values, 0, count);
+                adjustDividends(cols, from, values, 0, count);
+            }
+        }
+        return new Bars(date, data[Field.Open.ordinal()], data[Field.High.ordinal()], data[Field.Low.ordinal()], data[Field.Close.ordinal()], data[Field.Volume.ordinal()]);
+    }
+    /**
+     * Gets the bars between start and end (both included) in one pass, with
+     * the same zero fixing and dividend adjustment as the single field getters.
+     */
+    public Bars getBars(LocalDate start, LocalDate end, Field... fields)
+    {
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getBars(cols, startIndex(cols, start), endIndex(cols, end), fields);
+    }
+    /**
+     * Gets the last count bars until end (included) in one pass, with
+     * the same zero fixing and dividend adjustment as the single field getters.
+     */
+    public Bars getBars(int count, LocalDate end, Field... fields)
+    {
+        QuoteColumns cols = this.columns;
+        int to = endIndex(cols, end);
+        return getBars(cols, Math.max(to-count, 0), to, fields);
+    }
+
+    private double[] getIndicator1st(LocalDate start, LocalDate end, Field field, Indicator indicator, boolean reverseOrder)
     {
-        double[] value = getValue(start, end, getDouble, reverseOrder);
+        double[] value = getValue(start, end, field, reverseOrder);
         return indicator.get1st(value);
     }
-    private double[] getIndicator1st(int count, LocalDate end, GetDouble getDouble, Indicator indicator, boolean reverseOrder)
+    private double[] getIndicator1st(int count, LocalDate end, Field field, Indicator indicator, boolean reverseOrder)
     {
-        double[] value = getValue(count, end, getDouble, reverseOrder);
+        double[] value = getValue(count, end, field, reverseOrder);
         return indicator.get1st(value);
     }
-    private double[][] getIndicatorAll(LocalDate start, LocalDate end, GetDouble getDouble, Indicator indicator, boolean reverseOrder)
+    private double[][] getIndicatorAll(LocalDate start, LocalDate end, Field field, Indicator indicator, boolean reverseOrder)
     {
-        double[] value = getValue(start, end, getDouble, reverseOrder);
+        double[] value = getValue(start, end, field, reverseOrder);
         return indicator.getAll(value);
     }
-    private double[][] getIndicatorAll(int count, LocalDate end, GetDouble getDouble, Indicator indicator, boolean reverseOrder)
+    private double[][] getIndicatorAll(int count, LocalDate end, Field field, Indicator indicator, boolean reverseOrder)
     {
-        double[] value = getValue(count, end, getDouble, reverseOrder);
+        double[] value = getValue(count, end, field, reverseOrder);
         return indicator.getAll(value);
     }
     
     public double[] getSimpleMovingAverage(LocalDate start, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(start, end, getClose, new SimpleMovingAverage(period), reverseOrder);
+        return getIndicator1st(start, end, Field.Close, new SimpleMovingAverage(period), reverseOrder);
     }
     public double[] getSimpleMovingAverage(int count, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(count, end, getClose, new SimpleMovingAverage(period), reverseOrder);
+        return getIndicator1st(count, end, Field.Close, new SimpleMovingAverage(period), reverseOrder);
     }
     
     public double[] getExponentialMovingAverage(LocalDate start, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(start, end, getClose, new ExponentialMovingAverage(period), reverseOrder);
+        return getIndicator1st(start, end, Field.Close, new ExponentialMovingAverage(period), reverseOrder);
     }
     public double[] getExponentialMovingAverage(int count, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(count, end, getClose, new ExponentialMovingAverage(period), reverseOrder);
+        return getIndicator1st(count, end, Field.Close, new ExponentialMovingAverage(period), reverseOrder);
     }
 
     public double[] getHullMovingAverage(LocalDate start, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(start, end, getClose, new HullMovingAverage(period), reverseOrder);
+        return getIndicator1st(start, end, Field.Close, new HullMovingAverage(period), reverseOrder);
     }
     public double[] getHullMovingAverage(int count, LocalDate end, int period, boolean reverseOrder)
     {
-        return getIndicator1st(count, end, getClose, new HullMovingAverage(period), reverseOrder);
+        return getIndicator1st(count, end, Field.Close, new HullMovingAverage(period), reverseOrder);
     }
     
     public double[][] getMovingAverageConvergenceDivergence(LocalDate start, LocalDate end, int fastPeriod, int slowPeriod, int signalPeriod, boolean reverseOrder)
     {
-        return getIndicatorAll(start, end, getClose, new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod), reverseOrder);
+        return getIndicatorAll(start, end, Field.Close, new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod), reverseOrder);
     }
     public double[][] getMovingAverageConvergenceDivergence(int count, LocalDate end, int fastPeriod, int slowPeriod, int signalPeriod, boolean reverseOrder)
     {
-        return getIndicatorAll(count, end, getClose, new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod), reverseOrder);
+        return getIndicatorAll(count, end, Field.Close, new MovingAverageConvergenceDivergence(fastPeriod, slowPeriod, signalPeriod), reverseOrder);
     }
     
     public enum Coverage { ByPrice, ByBar}
@@ -559,15 +887,16 @@ public class StockQuotes
     public Envelope getEnvelope(int count, LocalDate endAt, int period, boolean exponential, Coverage by, double coverage, double delta)
     {
         int cp = count+period;
-        double [] high = getHigh(cp, endAt, false);
-        double [] low = getLow(cp, endAt, false);
-        double[] ma = exponential ? getExponentialMovingAverage(cp, endAt, period, false) : getSimpleMovingAverage(cp, endAt, period, false);
-        LocalDate[] date = getDate(count, endAt, false);
+        Bars bars = getBars(cp, endAt, Field.High, Field.Low, Field.Close);
+        double [] high = bars.high;
+        double [] low = bars.low;
+        Indicator indicator = exponential ? new ExponentialMovingAverage(period) : new SimpleMovingAverage(period);
+        double[] ma = indicator.get1st(bars.close);
         
-        count = count<=date.length ? count : date.length;
+        count = count<=bars.length ? count : bars.length;
         
-        final LocalDate firstDay = date[0];
-        final LocalDate lastDay = date[count-1];
+        final LocalDate firstDay = bars.date[bars.length-count];
+        final LocalDate lastDay = bars.date[bars.length-1];
         double up;
         double md;
         double dw;
@@ -699,13 +1028,14 @@ public class StockQuotes
     }
     public Gap getGap(int count, LocalDate startAt, LocalDate endAt, double coverage)
     {
-        double [] open = startAt!=null ? getOpen(startAt, endAt, false) : getOpen(count, endAt, false);
-        double [] high = startAt!=null ? getHigh(startAt, endAt, false) : getHigh(count, endAt, false);
-        double [] low  = startAt!=null ? getLow(startAt, endAt, false)  : getLow(count, endAt, false);
+        Bars bars = startAt!=null ? getBars(startAt, endAt, Field.Open, Field.High, Field.Low) : getBars(count, endAt, Field.Open, Field.High, Field.Low);
+        double [] open = bars.open;
+        double [] high = bars.high;
+        double [] low  = bars.low;
         double [] gapUp = new double[open.length-1];
         double [] gapDown = new double[open.length-1];
 
-        LocalDate[] date = startAt!=null ? getDate(startAt, endAt, false) : getDate(count, endAt, false);
+        LocalDate[] date = bars.date;
         final LocalDate firstDay = date[0];
         final LocalDate lastDay = date[date.length-1];
 
@@ -783,32 +1113,17 @@ public class StockQuotes
     {
         int cp = count+period;
 
-        double [] close = getClose(cp, until, false);
-        double [] high = getHigh(cp, until, false);
-        double [] low  = getLow(cp, until, false);
-        double [] atr = new double[close.length];
-        
-        assert close.length==high.length;
-        assert high.length==low.length;
-        
-        if(atr.length==0)
+        Bars bars = getBars(cp, until, Field.Close, Field.High, Field.Low);
+        if(bars.length==0)
         {
             return null;
         }
         
-        LocalDate[] date = getDate(count, until, false);
-        final LocalDate firstDay = date[0];
-        final LocalDate lastDay = date[date.length-1];
+        final LocalDate firstDay = bars.date[Math.max(bars.length-count, 0)];
+        final LocalDate lastDay = bars.date[bars.length-1];
 
-        double value = 0;
-        for(int i=1;i<atr.length;i++)
-        {   
-            double hl = high[i]-low[i];
-            double ch = Math.abs(close[i-1]-high[i]);
-            double cl = Math.abs(close[i-1]-low[i]);
-            double tr = Utils.max(hl,ch,cl);
-            atr[i] = value = i>1 ? (value*(period-1)+tr)/period : tr;
-        }
+        double[] atr = TrailingStops.wilderAverageTrueRange(bars.high, bars.low, bars.close, period);
+        double value = atr[atr.length-1];
         atr = Arrays.copyOfRange(atr, period, atr.length);
         return new AverageTrueRange(this.ticker, count, until, firstDay, lastDay, value, atr);
     }
@@ -837,92 +1152,15 @@ public class StockQuotes
         assert stopLoss>0;
         assert start==null || end==null || start.isBefore(end) || start.equals(end);
         
-        double sign = sellShort ? -1 : +1;
-        double af = accelerationFactor;
-        double[] open = getOpen(start, end, false);
-        double[] high = getHigh(start, end, false);
-        double[] low  = getLow(start, end, false);
-        double[] close  = getClose(start, end, false);
-        double[] stop = new double[high.length];
-        double[] extreme = sellShort ? low : high;
-        double[] nearby = sellShort ? high : low;
-        
-        assert high.length == low.length;
-        
-        if(stop.length==0)
+        Bars bars = getBars(start, end, Field.Open, Field.High, Field.Low, Field.Close);
+        if(bars.length==0)
         {
             return null;
         }
-        
-        LocalDate[] date = getDate(start, end, false);
-        final LocalDate firstDay = date[0];
-        final LocalDate lastDay = date[date.length-1];
-        LocalDate exitAt = null;
-        double exitValue = 0;
-        
-        double ep = extreme[0];
-        for(int i=0;i<stop.length;i++)
-        {
-            if( sellShort ? extreme[i]<ep : extreme[i]>ep)
-            {
-                ep = extreme[i];
-                af = Math.min(af + accelerationFactor, accelerationLimit);
-            }
-
-            if(i>0 && exitAt==null && (sellShort ? stopLoss<high[i] : stopLoss>low[i]))
-            {
-                exitAt = date[i];
-                exitValue = stopExit(stopLoss, open[i], high[i], low[i], close[i], sellShort);
-            }
-
-            double stopOffer = stopLoss + sign*af*Math.abs(ep-stopLoss);
-
-            if(sellShort ? stopOffer<nearby[i] : stopOffer>nearby[i])
-            {
-                stopOffer = sellShort ? Math.min(nearby[i], stopLoss) : Math.max(nearby[i], stopLoss);
-            }
-            else if(i>0 && (sellShort ? stopOffer<nearby[i-1] : stopOffer>nearby[i-1]))
-            {
-                stopOffer = sellShort ? Math.min(nearby[i-1], stopLoss) : Math.max(nearby[i-1], stopLoss);
-            }
-            stop[i] = stopLoss = stopOffer;
-        }
-        return new TrailingStop(this.ticker, stop.length, start, end, firstDay, lastDay, stopLoss, date, stop, exitAt, exitValue);
+        TrailingStops run = TrailingStops.parabolic(bars.open, bars.high, bars.low, bars.close, stopLoss, accelerationFactor, accelerationLimit, sellShort);
+        return trailingStop(start, end, bars.date, 0, run);
     }
     
-    double[] getAverageDownsidePenetration(double[] signal, int period, boolean sellShort)
-    {
-        double[] noise = new double[signal.length];
-        double[] avg = new double[signal.length];
-        if(avg.length==0)
-        {
-            return avg;
-        }
-        
-        int noiseCount = 0;
-        double noiseTotal = 0;
-        
-        
-        for(int i=1;i<signal.length;i++)
-        {
-            noise[i] = sellShort ? Math.max(signal[i]-signal[i-1],0) : Math.min(signal[i]-signal[i-1], 0);
-            if(noise[i]!=0)
-            {
-                noiseTotal += noise[i];
-                noiseCount++;
-            }
-            if(i>period)
-            {
-                if(noise[i-period]!=0)
-                {
-                    noiseTotal -= noise[i-period];
-                    noiseCount--;
-                }
-            }
-            avg[i] = noiseCount>0 ? noiseTotal/noiseCount : 0;
-        }
-        return avg;
-    }
     public TrailingStop getSafeZoneStop(LocalDate start, LocalDate end, double stopLoss, double coefficient, int period, boolean sellShort)
     {
         assert coefficient>0;
@@ -930,73 +1168,24 @@ public class StockQuotes
         assert start==null || end==null || start.isBefore(end) || start.equals(end);
         assert period>0;
         
-        LocalDate seedStart = null;
-        if(start!=null)
-        {
-            LocalDate[] seeds = getDate(period+2, start, false);
-            if(seeds!=null && seeds.length>0)
-            {
-                seedStart = seeds[0];
-            }            
-        }
-        
-        double[] open = getOpen(seedStart, end, false);
-        double[] high = getHigh(seedStart, end, false);
-        double[] low  = getLow(seedStart, end, false);
-        double[] close= getClose(seedStart, end, false);
-        double[] signal = sellShort ? high : low;
-        double[] stop = new double[signal.length];
-        
-        if(stop.length==0)
+        QuoteColumns cols = this.columns;
+        int from = seedIndex(cols, start, period);
+        Bars bars = getBars(cols, from, endIndex(cols, end), STOP_FIELDS);
+        if(bars.length==0)
         {
             return null;
         }
-        
-        double[] noise = getAverageDownsidePenetration(signal, period, sellShort);
-        
-        LocalDate[] date = getDate(seedStart, end, false);
-        LocalDate firstDay = date[0];
-        final LocalDate lastDay = date[date.length-1];
-        LocalDate exitAt = null;
-        double exitValue = 0;
-
-        int firstIndex = 0;
-
-        Round round = sellShort ? roundCeiling : roundFloor;
-        for(int i=0;i<signal.length;i++)
+        int first = startIndex(cols, start)-from;
+        TrailingStops run;
+        if(fixedPoint)
         {
-            final LocalDate curDay = date[i];
-
-            if(start!=null && curDay.isBefore(start))
-            {
-                firstIndex = i;
-                firstDay = curDay;
-                stop[i] = stopLoss;
-                continue;
-            }
-            
-            if(start!=null && firstDay.isBefore(start))
-            {
-                firstIndex = i;
-                firstDay = curDay;
-            }
-
-            if(i>0 && exitAt==null && (sellShort ? stopLoss<high[i] : stopLoss>low[i]))
-            {
-                exitAt = date[i];
-                exitValue = stopExit(stopLoss, open[i], high[i], low[i], close[i], sellShort);
-            }
-            
-            double stopOffer = round.round(signal[i] + noise[i]*coefficient, this.step);
-            
-            stop[i] = stopLoss = sellShort ?  Math.min(stopOffer,stopLoss) : Math.max(stopOffer,stopLoss);        
+            run = toPrices(TrailingStops.Ticks.safeZone(toTicks(bars.open), toTicks(bars.high), toTicks(bars.low), toTicks(bars.close), first, Math.round(stopLoss/step), Math.round(coefficient*TrailingStops.Ticks.COEFFICIENT_SCALE), period, sellShort));
         }
-        if(firstIndex>0)
+        else
         {
-            stop = Arrays.copyOfRange(stop, firstIndex, stop.length);
-            date = Arrays.copyOfRange(date, firstIndex, date.length);
+            run = TrailingStops.safeZone(bars.open, bars.high, bars.low, bars.close, first, stopLoss, coefficient, period, sellShort, sellShort ? roundCeiling : roundFloor, this.step);
         }
-        return new TrailingStop(this.ticker, stop.length, start, end, firstDay, lastDay, stopLoss, date, stop, exitAt, exitValue);
+        return trailingStop(start, end, bars.date, first, run);
     }
     public TrailingStop getChandelierStop(LocalDate start, LocalDate end, double stopLoss, double coefficient, int period, boolean sellShort)
     {
@@ -1005,266 +1194,277 @@ public class StockQuotes
         assert start==null || end==null || start.isBefore(end) || start.equals(end);
         assert period>0;
         
-        LocalDate seedStart = null;
-        if(start!=null)
-        {
-            LocalDate[] seeds = getDate(period+2, start, false);
-            if(seeds!=null && seeds.length>0)
-            {
-                seedStart = seeds[0];
-            }            
-        }
-
-        double [] open = getOpen(seedStart, end, false);
-        double [] high = getHigh(seedStart, end, false);
-        double [] low  = getLow(seedStart, end, false);
-        double [] close = getClose(seedStart, end, false);
-        double[] ep = sellShort ? low : high;
-        double[] stop = new double[ep.length];
-        
-        if(stop.length==0)
+        QuoteColumns cols = this.columns;
+        int from = seedIndex(cols, start, period);
+        Bars bars = getBars(cols, from, endIndex(cols, end), STOP_FIELDS);
+        if(bars.length==0)
         {
             return null;
         }
-        
-        assert close.length == high.length;
-        assert close.length == low.length;
-        
-        double[] atr = getAverageTrueRange(high, low, close, period);
-        
-        LocalDate[] date = getDate(seedStart, end, false);
-        LocalDate firstDay = date[0];
-        final LocalDate lastDay = date[date.length-1];
-        LocalDate exitAt = null;
-        double exitValue = 0;
-        
-        assert (!firstDay.isAfter(lastDay)) : firstDay+" > "+lastDay;
-
-        int firstIndex = 0;
-        
-        coefficient = sellShort ? coefficient : -coefficient;
-
-        Round round = sellShort ? roundCeiling : roundFloor;
-        for(int i=0;i<atr.length;i++)
+        int first = startIndex(cols, start)-from;
+        TrailingStops run;
+        if(fixedPoint)
         {
-            final LocalDate curDay = date[i];
-
-            if(start!=null && curDay.isBefore(start))
-            {
-                firstIndex = i;
-                firstDay = curDay;
-                stop[i] = stopLoss;
-                continue;
-            }
-            
-            if(start!=null && firstDay.isBefore(start))
-            {
-                firstIndex = i;
-                firstDay = curDay;
-            }
-
-            if(i>0 && exitAt==null && (sellShort ? stopLoss<high[i] : stopLoss>low[i]))
-            {
-                exitAt = date[i];
-                exitValue = stopExit(stopLoss, open[i], high[i], low[i], close[i], sellShort);
-            }
-            
-            double stopOffer = round.round(ep[i] + atr[i]*coefficient, this.step);
-            
-            stop[i] = stopLoss = sellShort ?  Math.min(stopOffer,stopLoss) : Math.max(stopOffer,stopLoss);            
+            run = toPrices(TrailingStops.Ticks.chandelier(toTicks(bars.open), toTicks(bars.high), toTicks(bars.low), toTicks(bars.close), first, Math.round(stopLoss/step), Math.round(coefficient*TrailingStops.Ticks.COEFFICIENT_SCALE), period, sellShort));
         }
-        if(firstIndex>0)
+        else
         {
-            stop = Arrays.copyOfRange(stop, firstIndex, stop.length);
-            date = Arrays.copyOfRange(date, firstIndex, date.length);
+            run = TrailingStops.chandelier(bars.open, bars.high, bars.low, bars.close, first, stopLoss, coefficient, period, sellShort, sellShort ? roundCeiling : roundFloor, this.step);
         }
-        return new TrailingStop(this.ticker, stop.length, start, end, firstDay, lastDay, stopLoss, date, stop, exitAt, exitValue);
+        return trailingStop(start, end, bars.date, first, run);
     }
-    private static double stopExit(double stop, double open, double high, double low, double close, boolean sellShort)
+    private static final Field[] STOP_FIELDS = {Field.Open, Field.High, Field.Low, Field.Close};
+    /**
+     * position of the first of the period+2 bars until start, so the stop is seeded when the window begins
+     */
+    private static int seedIndex(QuoteColumns cols, LocalDate start, int period)
     {
-        if(sellShort)
-        {
-            if(open>stop)
-            {
-                return open;
-            }
-            if(high>stop)
-            {
-                return stop;
-            }
-        }
-        else
-        {
-            if(open<stop)
-            {
-                return open;
-            }
-            if(low<stop)
-            {
-                return stop;
-            }
-        }
-        return 0;
+        return start!=null ? Math.max(cols.higher(QuoteColumns.epochDay(start))-(period+2), 0) : 0;
     }
-
-    double[] getAverageTrueRange(double[] high, double[] low, double[] close, int period)
+    /**
+     * the history from position first, or from the last bar if every bar is before it
+     */
+    private TrailingStop trailingStop(LocalDate start, LocalDate end, LocalDate[] date, int first, TrailingStops run)
     {
-        assert high.length==low.length;
-        assert high.length==close.length;
-        
-        double[] atr = new double[high.length];
-        double[] avg = new double[high.length];
-        
-        if(avg.length==0)
-        {
-            return avg;
-        }
-        
-        int atrCount = 1;
-        double atrTotal = avg[0] = atr[0] = high[0]-low[0];
-        
-        assert atrTotal>=0;
-        
-        for(int i=1;i<avg.length;i++)
+        int from = Math.min(first, date.length-1);
+        double[] stop = run.stop;
+        if(from>0)
         {
-            assert (high[i]>=low[i]) :(high[i]+"<"+low[i]);
-            
-            atr[i] = Nums.maxOf(high[i]-low[i], Math.abs(high[i]-close[i-1]), Math.abs(low[i]-close[i-1]));
-            if(atr[i]!=0)
-            {
-                atrTotal += atr[i];
-                atrCount++;
-            }
-            if(i>=period)
-            {
-                if(atr[i-period]!=0)
-                {
-                    atrTotal -= atr[i-period];
-                    atrCount--;
-                }
-            }
-            avg[i] = atrCount>0 ? atrTotal/atrCount : 0;
+            stop = Arrays.copyOfRange(stop, from, stop.length);
+            date = Arrays.copyOfRange(date, from, date.length);
         }
-        return avg;
+        LocalDate exitAt = run.exit>=0 ? date[run.exit-from] : null;
+        return new TrailingStop(this.ticker, stop.length, start, end, date[0], date[date.length-1], run.value, date, stop, exitAt, run.exitValue);
     }
 
     public LocalDate firstKey()
     {
-        return map.firstKey();
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.date(0);
     }
     public Quote firstValue()
     {
-        return map.firstEntry().getValue();
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.get(0);
     }
 
     public LocalDate lastKey()
     {
-        return map.lastKey();
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.date(cols.size-1);
     }
     public Quote lastValue()
     {
-        return map.lastEntry().getValue();
+        QuoteColumns cols = this.columns;
+        if(cols.size==0)
+        {
+            throw new NoSuchElementException();
+        }
+        return cols.get(cols.size-1);
     }
 
     public boolean merge(StockQuotes stockQuotes)
     {
-        boolean ret = false;
-        for(Map.Entry<LocalDate,Quote> entry: stockQuotes.map.entrySet())
+        return merge(stockQuotes, MergePolicy.Keep);
+    }
+    /**
+     * adds the bars of stockQuotes in one linear pass over both stores, taking
+     * the lock once. Bars with a day not present are inserted and bars of the
+     * same day are resolved by the policy.
+     * @return true if this StockQuotes changed
+     */
+    public boolean merge(StockQuotes stockQuotes, MergePolicy policy)
+    {
+        checkWritable();
+        QuoteColumns other = stockQuotes.columns;
+        synchronized(lock)
         {
-            if(!this.map.containsKey(entry.getKey()))
-            {
-                this.map.put(entry.getKey(),entry.getValue());
-                ret = true;
-            }
+            QuoteColumns cols = this.columns;
+            return publish(cols, cols.merge(other, policy), other);
         }
-        return ret;
     }
-    public StockQuotes getSubStockQuotes(int count, LocalDate end)
+    /**
+     * publishes next, made from cols with the bars of src, and updates the views, holding the lock
+     * @return true if next is a new version
+     */
+    private boolean publish(QuoteColumns cols, QuoteColumns next, QuoteColumns src)
     {
-        Quote[] quotes = this.map.subMap(LocalDate.MIN, end).values().toArray(new Quote[0]);
-        Arrays.sort(quotes);
-        Sorts.reverse(quotes);
-
-        StockQuotes stockQuotes = new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step);
-
-        for(int i=0;i<quotes.length && i<count;i++)
+        if(next==cols)
+        {
+            return false;
+        }
+        this.columns = next;
+        if(cols.endsBefore(src))
+        {
+            appended(next, cols.size);
+        }
+        else
         {
-            stockQuotes.add(quotes[i]);
+            invalidateViews();
         }
-        return stockQuotes;
+        return true;
+    }
+    /**
+     * a read-only view of the bars [from,to) of a snapshot, it shares the
+     * arrays so taking it is O(1)
+     */
+    private StockQuotes getSubStockQuotes(QuoteColumns cols, int from, int to)
+    {
+        return new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step, cols.slice(from, Math.max(from, to)), true);
+    }
+    /**
+     * a read-only view of the last count bars before end, it does not see later changes
+     */
+    public StockQuotes getSubStockQuotes(int count, LocalDate end)
+    {
+        QuoteColumns cols = this.columns;
+        int to = cols.ceiling(QuoteColumns.epochDay(end));
+        return getSubStockQuotes(cols, Math.max(to-count, 0), to);
     }
+    /**
+     * a read-only view of the bars from start (included) to end (excluded), it does not see later changes
+     */
     public StockQuotes getSubStockQuotes(LocalDate start, LocalDate end)
     {
-        Quote[] quotes = this.map.subMap(start, end).values().toArray(new Quote[0]);
-        Arrays.sort(quotes);
-        Sorts.reverse(quotes);
+        checkRange(start, end);
+        QuoteColumns cols = this.columns;
+        return getSubStockQuotes(cols, cols.ceiling(QuoteColumns.epochDay(start)), cols.ceiling(QuoteColumns.epochDay(end)));
+    }
 
-        StockQuotes stockQuotes = new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step);
+    /**
+     * a detached and writable copy of the current bars
+     */
+    public StockQuotes copy()
+    {
+        QuoteColumns cols = this.columns;
+        return new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step, cols.copy(cols.size), false);
+    }
 
-        for(int i=0;i<quotes.length;i++)
-        {
-            stockQuotes.add(quotes[i]);
-        }
-        return stockQuotes;
+    /**
+     * number of stored bars with a zero in field. Reads with zero fixing
+     * replace them with the previous value, or the leading ones with a value
+     * from the other prices of the bar, so a zero without any of them is
+     * counted here but read as zero.
+     */
+    public int getZeroCount(Field field)
+    {
+        return this.columns.zeros(field);
     }
 
     public int size()
     {
-        return map.size();
+        return this.columns.size;
     }
 
     public boolean isEmpty()
     {
-        return map.isEmpty();
+        return this.columns.size==0;
     }
 
 
     public List<Quote> getQuotes()
     {
-        return new ArrayList<>(this.map.values());
+        QuoteColumns cols = this.columns;
+        ArrayList<Quote> quotes = new ArrayList<>(cols.size);
+        for(int i=0;i<cols.size;i++)
+        {
+            quotes.add(cols.get(i));
+        }
+        return quotes;
     }
     
+    /**
+     * weekly bars kept up to date as daily bars are appended
+     * @return a read-only snapshot of the current weekly bars
+     */
     public StockQuotes getWeekly()
     {
-        HashMap<LocalDate, Quote> wmap = new HashMap<>();
-        
-        for( Quote item : this.map.values())
-        {
-            LocalDate key = JavaTime.atStartOfWeek(item.date);
-            Quote value = wmap.get(key);
-            value = value!= null ? value.merge(item) : item;
-            wmap.put(key, value);
-        }
-        
-        StockQuotes weekly = new StockQuotes(this.ticker, this.applyDividend, this.decimals, step);
-        
-        for(Quote item : wmap.values())
+        return getView(Timeframe.Weekly);
+    }
+    /**
+     * monthly bars kept up to date as daily bars are appended
+     * @return a read-only snapshot of the current monthly bars
+     */
+    public StockQuotes getMonthly()
+    {
+        return getView(Timeframe.Monthly);
+    }
+    /**
+     * the snapshot published since the last write is read without the lock,
+     * it is only taken to publish a new one
+     */
+    private StockQuotes getView(Timeframe timeframe)
+    {
+        int t = timeframe.ordinal();
+        QuoteColumns snapshot = published[t];
+        if(snapshot==null)
         {
-            weekly.add(item);
+            synchronized(lock)
+            {
+                snapshot = published[t];
+                if(snapshot==null)
+                {
+                    ResampledView view = views[t];
+                    if(view==null)
+                    {
+                        QuoteColumns cols = this.columns;
+                        view = views[t] = new ResampledView(timeframe, 1);
+                        view.add(cols, 0, cols.size);
+                    }
+                    snapshot = view.publish();
+                    QuoteColumns[] next = published.clone();
+                    next[t] = snapshot;
+                    published = next;
+                }
+            }
         }
-        
-        return weekly;
+        return new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step, snapshot, true);
     }
-    public StockQuotes getMonthly()
+    /**
+     * aggregates the daily bars in one sorted pass. Each bar of the result has
+     * the date and open of its first daily bar, the close of the last one, the
+     * highest high, the lowest low and the sum of volumes and dividends.
+     * Hourly is not supported because the bars are daily.
+     */
+    public StockQuotes resample(Timeframe timeframe)
     {
-        HashMap<LocalDate, Quote> wmap = new HashMap<>();
-        
-        for( Quote item : this.map.values())
+        if(timeframe==Timeframe.Hourly)
         {
-            LocalDate key = item.date.withDayOfMonth(1);
-            Quote value = wmap.get(key);
-            value = value!= null ? value.merge(item) : item;
-            wmap.put(key, value);
+            throw new IllegalArgumentException("daily bars cannot be resampled to "+timeframe);
         }
-        
-        StockQuotes monthly = new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step);
-        
-        for(Quote item : wmap.values())
+        return resample(timeframe, 1);
+    }
+    /**
+     * aggregates the daily bars in buckets of the given number of calendar
+     * days counted from 1970-01-01, so the bucket of a date never depends on
+     * the first bar stored
+     */
+    public StockQuotes resample(int days)
+    {
+        if(days<1)
         {
-            monthly.add(item);
+            throw new IllegalArgumentException("days < 1");
         }
-        
-        return monthly;
+        return resample(null, days);
+    }
+    private StockQuotes resample(Timeframe timeframe, int days)
+    {
+        QuoteColumns cols = this.columns;
+        ResampledView view = new ResampledView(timeframe, days);
+        view.add(cols, 0, cols.size);
+        return new StockQuotes(this.ticker, this.applyDividend, this.decimals, this.step, view.publish(), false);
     }
     
 //666    public double getTickSize()
@@ -0,0 +1,205 @@
+/*
+ * StockQuotesBatch.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs one computation over many StockQuotes in parallel. A ForkJoinPool is
+ * used unless virtual threads are requested and the running JVM has them, in
+ * which case a semaphore keeps at most parallelism computations running.
+ * <p>
+ * A failure only affects the result of its ticker.
+ *
+ * @author franci
+ */
+public class StockQuotesBatch
+{
+    public interface Computation<T>
+    {
+        T compute(StockQuotes quotes) throws Exception;
+    }
+
+    public static class Result<T>
+    {
+        public final StockQuotes quotes;
+        public final T value;
+        public final Exception error;
+
+        Result(StockQuotes quotes, T value, Exception error)
+        {
+            this.quotes = quotes;
+            this.value = value;
+            this.error = error;
+        }
+        public String getTicker()
+        {
+            return quotes.getTicker();
+        }
+        public boolean isOk()
+        {
+            return error==null;
+        }
+    }
+
+    private static final Callable<ExecutorService> VIRTUAL_THREADS = virtualThreads();
+
+    //Executors.newVirtualThreadPerTaskExecutor() exists since Java 21, it is looked up by reflection to keep running on Java 8
+    private static Callable<ExecutorService> virtualThreads()
+    {
+        try
+        {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return () -> (ExecutorService) method.invoke(null);
+        }
+        catch(NoSuchMethodException | SecurityException ex)
+        {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsAvailable()
+    {
+        return VIRTUAL_THREADS!=null;
+    }
+
+    private final int parallelism;
+    private final boolean virtualThreads;
+
+    public StockQuotesBatch()
+    {
+        this(0, false);
+    }
+    /**
+     * @param parallelism maximum number of computations running at once, 0 or less for the available processors
+     * @param virtualThreads use virtual threads if the JVM supports them
+     */
+    public StockQuotesBatch(int parallelism, boolean virtualThreads)
+    {
+        this.parallelism = parallelism>0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.virtualThreads = virtualThreads && isVirtualThreadsAvailable();
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * runs the computation for every StockQuotes and waits for all of them
+     * @return one result per StockQuotes, in the same order
+     */
+    public <T> List<Result<T>> run(Collection<StockQuotes> quotes, Computation<T> computation) throws InterruptedException
+    {
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        //only virtual threads need the permits, the pool already runs parallelism tasks at most
+        Semaphore permits = virtual!=null ? new Semaphore(parallelism) : null;
+        ExecutorService executor = virtual!=null ? virtual : new ForkJoinPool(parallelism);
+        List<Callable<Result<T>>> tasks = new ArrayList<>(quotes.size());
+        for(StockQuotes item : quotes)
+        {
+            tasks.add(() -> compute(item, computation, permits));
+        }
+        try
+        {
+            List<Future<Result<T>>> futures = executor.invokeAll(tasks);
+            List<Result<T>> results = new ArrayList<>(futures.size());
+            for(Future<Result<T>> future : futures)
+            {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch(ExecutionException ex)
+        {
+            //compute only lets errors and interruptions through
+            Throwable cause = ex.getCause();
+            if(cause instanceof InterruptedException)
+            {
+                throw (InterruptedException) cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * a virtual thread per task executor or null to fall back to the pool
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            return VIRTUAL_THREADS.call();
+        }
+        catch(Exception ex)
+        {
+            return null;
+        }
+    }
+    private static <T> Result<T> compute(StockQuotes quotes, Computation<T> computation, Semaphore permits) throws InterruptedException
+    {
+        if(permits!=null)
+        {
+            permits.acquire();
+        }
+        try
+        {
+            return new Result<>(quotes, computation.compute(quotes), null);
+        }
+        catch(InterruptedException ex)
+        {
+            throw ex;
+        }
+        catch(Exception ex)
+        {
+            return new Result<>(quotes, null, ex);
+        }
+        finally
+        {
+            if(permits!=null)
+            {
+                permits.release();
+            }
+        }
+    }
+}
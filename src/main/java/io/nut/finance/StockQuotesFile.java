@@ -0,0 +1,352 @@
+/*
+ * StockQuotesFile.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Binary columnar file with the daily bars of many tickers.
+ * <p>
+ * The file starts with a header (magic, version, ticker count and directory
+ * length) followed by a directory with one entry per ticker (data offset, bar
+ * count, decimals, step, flags and name). The bars of each ticker are stored
+ * as contiguous columns: the epoch days as ints padded to 8 bytes and then the
+ * open, high, low, close, volume and dividend doubles. Everything is little
+ * endian and every column is 8 byte aligned.
+ * <p>
+ * Opening a file only maps and parses the directory, no bars are read. The
+ * bars of a ticker are mapped when it is requested and read in place, they
+ * are not copied to the heap and the pages are loaded as they are touched.
+ * The first request of a ticker also reads its days once to check that they
+ * are ascending. Writes map the
+ * file and copy whole columns at once, a snapshot of every ticker can be
+ * reloaded with {@link #load} instead of parsing the vendor files again.
+ *
+ * @author franci
+ */
+public final class StockQuotesFile implements Closeable
+{
+    static final int MAGIC = 0x4E555451; //NUTQ
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 32;
+    static final int APPLY_DIVIDEND = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final FileChannel channel;
+    private final String[] tickers;
+    private final long[] offset;
+    private final int[] size;
+    private final int[] decimals;
+    private final double[] step;
+    private final int[] flags;
+    //tickers whose days were already checked, a race only checks one twice
+    private final boolean[] ordered;
+    private final HashMap<String,Integer> index;
+
+    private StockQuotesFile(FileChannel channel, int count)
+    {
+        this.channel = channel;
+        this.tickers = new String[count];
+        this.offset = new long[count];
+        this.size = new int[count];
+        this.decimals = new int[count];
+        this.step = new double[count];
+        this.flags = new int[count];
+        this.ordered = new boolean[count];
+        this.index = new HashMap<>(count*2);
+    }
+
+    private static int align8(int n)
+    {
+        return (n+7) & ~7;
+    }
+    static long dataBytes(int size)
+    {
+        return ((Integer.BYTES*(long)size+7) & ~7L) + 6L*Double.BYTES*size;
+    }
+
+    public static void write(Path file, StockQuotes... quotes) throws IOException
+    {
+        write(file, Arrays.asList(quotes));
+    }
+    /**
+     * writes the current bars of every StockQuotes. The ticker is the key of
+     * each one in the file, so they must be non null and unique, those made
+     * with the constructors without ticker cannot be written.
+     * @throws IllegalArgumentException if a ticker is null or repeated
+     */
+    public static void write(Path file, Collection<StockQuotes> quotes) throws IOException
+    {
+        int count = quotes.size();
+        StockQuotes[] items = quotes.toArray(new StockQuotes[count]);
+        QuoteColumns[] cols = new QuoteColumns[count];
+        byte[][] names = new byte[count][];
+        HashSet<String> seen = new HashSet<>();
+        int directoryBytes = 0;
+        for(int i=0;i<count;i++)
+        {
+            String ticker = items[i].getTicker();
+            if(ticker==null || !seen.add(ticker))
+            {
+                throw new IllegalArgumentException("null or repeated ticker "+ticker);
+            }
+            cols[i] = items[i].snapshot();
+            names[i] = ticker.getBytes(StandardCharsets.UTF_8);
+            directoryBytes += ENTRY_BYTES + align8(names[i].length);
+        }
+        ByteBuffer directory = ByteBuffer.allocate(HEADER_BYTES+directoryBytes).order(ORDER);
+        directory.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(directoryBytes);
+        long position = HEADER_BYTES+directoryBytes;
+        for(int i=0;i<count;i++)
+        {
+            directory.putLong(position);
+            directory.putInt(cols[i].size);
+            directory.putInt(items[i].getDecimals());
+            directory.putDouble(items[i].getStep());
+            directory.putInt(items[i].isApplyDividend() ? APPLY_DIVIDEND : 0);
+            directory.putInt(names[i].length);
+            directory.put(names[i]);
+            directory.position(align8(directory.position()));
+            position += dataBytes(cols[i].size);
+        }
+        directory.flip();
+
+        try(FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            out.map(FileChannel.MapMode.READ_WRITE, 0, directory.remaining()).put(directory);
+            position = HEADER_BYTES+directoryBytes;
+            for(QuoteColumns item : cols)
+            {
+                long bytes = dataBytes(item.size);
+                if(bytes>0)
+                {
+                    MappedByteBuffer data = out.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+                    data.order(ORDER);
+                    encode(item, data);
+                }
+                position += bytes;
+            }
+        }
+    }
+    /**
+     * puts the columns of cols with bulk copies, the epoch days go through an int array
+     */
+    private static void encode(QuoteColumns cols, ByteBuffer data)
+    {
+        int n = cols.size;
+        int[] days = new int[n];
+        for(int i=0;i<n;i++)
+        {
+            days[i] = Math.toIntExact(cols.key(i));
+        }
+        data.asIntBuffer().put(days);
+        data.position(align8(Integer.BYTES*n));
+        for(double[] column : new double[][]{cols.open, cols.high, cols.low, cols.close, cols.volume, cols.dividend})
+        {
+            data.asDoubleBuffer().put(column, cols.offset, n);
+            data.position(data.position()+Double.BYTES*n);
+        }
+    }
+
+    /**
+     * opens a file mapping only its directory
+     */
+    public static StockQuotesFile open(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            if(channel.size()<HEADER_BYTES)
+            {
+                throw new IOException("not a quotes file "+file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ORDER);
+            int magic = header.getInt();
+            int version = header.getInt();
+            int count = header.getInt();
+            int directoryBytes = header.getInt();
+            if(magic!=MAGIC || version!=VERSION || count<0 || directoryBytes<0 || HEADER_BYTES+(long)directoryBytes>channel.size())
+            {
+                throw new IOException("not a quotes file "+file);
+            }
+            if((long)count*ENTRY_BYTES>directoryBytes)
+            {
+                throw new IOException("truncated quotes file "+file);
+            }
+            StockQuotesFile quotesFile = new StockQuotesFile(channel, count);
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, directoryBytes);
+            directory.order(ORDER);
+            long dataStart = HEADER_BYTES+(long)directoryBytes;
+            for(int i=0;i<count;i++)
+            {
+                if(directory.remaining()<ENTRY_BYTES)
+                {
+                    throw new IOException("truncated quotes file "+file);
+                }
+                quotesFile.offset[i] = directory.getLong();
+                quotesFile.size[i] = directory.getInt();
+                quotesFile.decimals[i] = directory.getInt();
+                quotesFile.step[i] = directory.getDouble();
+                quotesFile.flags[i] = directory.getInt();
+                int nameLen = directory.getInt();
+                if(nameLen<0 || nameLen>directory.remaining())
+                {
+                    throw new IOException("not a quotes file "+file);
+                }
+                byte[] name = new byte[nameLen];
+                directory.get(name);
+                directory.position(Math.min(align8(directory.position()), directory.limit()));
+                quotesFile.tickers[i] = new String(name, StandardCharsets.UTF_8);
+                quotesFile.index.put(quotesFile.tickers[i], i);
+                if(quotesFile.offset[i]<dataStart || quotesFile.size[i]<0)
+                {
+                    throw new IOException("not a quotes file "+file);
+                }
+                if(quotesFile.offset[i]>channel.size()-dataBytes(quotesFile.size[i]))
+                {
+                    throw new IOException("truncated quotes file "+file);
+                }
+            }
+            return quotesFile;
+        }
+        catch(IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * checks that the days of ticker i are strictly ascending, as the searches
+     * over the mapped keys need
+     */
+    private void checkOrder(int i, IntBuffer days) throws IOException
+    {
+        for(int k=1;k<days.limit();k++)
+        {
+            if(days.get(k)<=days.get(k-1))
+            {
+                throw new IOException("unsorted bars for "+tickers[i]);
+            }
+        }
+        ordered[i] = true;
+    }
+
+    /**
+     * reads every StockQuotes of a file. They are read-only and read the bars
+     * in place from the mapped file, to keep adding bars use load(file, true)
+     * @return read-only StockQuotes in the order they were written
+     */
+    public static List<StockQuotes> load(Path file) throws IOException
+    {
+        return load(file, false);
+    }
+    /**
+     * reads every StockQuotes of a file, if writable the bars of each one are
+     * copied to the heap so they can be modified, as copy() does, otherwise
+     * they are read in place
+     * @return StockQuotes in the order they were written
+     */
+    public static List<StockQuotes> load(Path file, boolean writable) throws IOException
+    {
+        try(StockQuotesFile quotesFile = open(file))
+        {
+            List<StockQuotes> quotes = new ArrayList<>(quotesFile.size());
+            for(int i=0;i<quotesFile.size();i++)
+            {
+                StockQuotes item = quotesFile.get(i);
+                quotes.add(writable ? item.copy() : item);
+            }
+            return quotes;
+        }
+    }
+
+    public int size()
+    {
+        return tickers.length;
+    }
+
+    public String[] getTickers()
+    {
+        return tickers.clone();
+    }
+
+    public boolean contains(String ticker)
+    {
+        return index.containsKey(ticker);
+    }
+
+    /**
+     * maps the bars of a ticker, they are read in place while the returned
+     * instance is used and stay valid after the file is closed
+     * @return a read-only StockQuotes or null if the ticker is not in the file
+     */
+    public StockQuotes get(String ticker) throws IOException
+    {
+        Integer i = index.get(ticker);
+        return i!=null ? get(i) : null;
+    }
+    private StockQuotes get(int i) throws IOException
+    {
+        int n = size[i];
+        ByteBuffer data = n>0 ? channel.map(FileChannel.MapMode.READ_ONLY, offset[i], dataBytes(n)) : ByteBuffer.allocate(0);
+        data.order(ORDER);
+        IntBuffer days = data.asIntBuffer();
+        days.limit(n);
+        if(!ordered[i])
+        {
+            checkOrder(i, days);
+        }
+        DoubleBuffer[] columns = new DoubleBuffer[6];
+        for(int c=0;c<columns.length;c++)
+        {
+            data.position(align8(Integer.BYTES*n)+c*Double.BYTES*n);
+            columns[c] = data.asDoubleBuffer();
+            columns[c].limit(n);
+        }
+        QuoteColumns cols = QuoteColumns.mapped(days, columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], n);
+        return new StockQuotes(tickers[i], (flags[i]&APPLY_DIVIDEND)!=0, decimals[i], step[i], cols, true);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * StockUniverse.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.Field;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Many StockQuotes aligned on one shared axis with every date that has a bar
+ * in any of them. Each loaded field is kept in two layouts, a time x symbol
+ * matrix where the values of one date are contiguous and a symbol x time one
+ * where the series of one ticker is contiguous. A ticker without a bar on a
+ * date has NaN there.
+ * <p>
+ * Values are taken when the universe is built, with the zero fixing and
+ * dividend adjustment of each StockQuotes, and later changes are not seen.
+ *
+ * @author franci
+ */
+public class StockUniverse
+{
+    private final String[] tickers;
+    private final HashMap<String,Integer> symbolIndex;
+    private final long[] day;
+    //values of a date contiguous, [date*symbols+symbol]
+    private final double[][] byDate;
+    //values of a ticker contiguous, [symbol*days+date]
+    private final double[][] bySymbol;
+
+    public StockUniverse(Collection<StockQuotes> quotes)
+    {
+        this(quotes, Field.values());
+    }
+    /**
+     * builds a universe with the given fields, the tickers must be non null and unique
+     */
+    public StockUniverse(Collection<StockQuotes> quotes, Field... fields)
+    {
+        int symbols = quotes.size();
+        this.tickers = new String[symbols];
+        this.symbolIndex = new HashMap<>(symbols*2);
+        StockQuotes[] items = quotes.toArray(new StockQuotes[symbols]);
+        QuoteColumns[] cols = new QuoteColumns[symbols];
+        int total = 0;
+        for(int s=0;s<symbols;s++)
+        {
+            tickers[s] = items[s].getTicker();
+            if(tickers[s]==null || symbolIndex.put(tickers[s], s)!=null)
+            {
+                throw new IllegalArgumentException("null or repeated ticker "+tickers[s]);
+            }
+            cols[s] = items[s].snapshot();
+            total = Math.addExact(total, cols[s].size);
+        }
+        this.day = axis(cols, total);
+        int days = day.length;
+        int cells = cells(days, symbols);
+
+        this.byDate = new double[Field.values().length][];
+        this.bySymbol = new double[Field.values().length][];
+        for(Field field : fields)
+        {
+            if(byDate[field.ordinal()]==null)
+            {
+                byDate[field.ordinal()] = new double[cells];
+                bySymbol[field.ordinal()] = new double[cells];
+                Arrays.fill(byDate[field.ordinal()], Double.NaN);
+                Arrays.fill(bySymbol[field.ordinal()], Double.NaN);
+            }
+        }
+        for(int s=0;s<symbols;s++)
+        {
+            QuoteColumns c = cols[s];
+            int[] position = new int[c.size];
+            for(int i=0,t=0;i<c.size;i++)
+            {
+                while(day[t]<c.key(i))
+                {
+                    t++;
+                }
+                position[i] = t;
+            }
+            for(Field field : Field.values())
+            {
+                double[] dateMajor = byDate[field.ordinal()];
+                if(dateMajor!=null)
+                {
+                    double[] values = items[s].getValue(c, 0, c.size, field, false);
+                    double[] symbolMajor = bySymbol[field.ordinal()];
+                    for(int i=0;i<values.length;i++)
+                    {
+                        dateMajor[position[i]*symbols+s] = values[i];
+                        symbolMajor[s*days+position[i]] = values[i];
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * size of a matrix, the products of positions inside it cannot overflow
+     */
+    private static int cells(int days, int symbols)
+    {
+        try
+        {
+            return Math.multiplyExact(days, symbols);
+        }
+        catch(ArithmeticException ex)
+        {
+            throw new IllegalArgumentException("too many cells for a matrix: "+days+" days x "+symbols+" symbols", ex);
+        }
+    }
+    private static long[] axis(QuoteColumns[] cols, int total)
+    {
+        long[] all = new long[total];
+        int n = 0;
+        for(QuoteColumns c : cols)
+        {
+            System.arraycopy(c.keys, c.offset, all, n, c.size);
+            n += c.size;
+        }
+        Arrays.sort(all);
+        int count = 0;
+        for(int i=0;i<n;i++)
+        {
+            if(count==0 || all[i]!=all[count-1])
+            {
+                all[count++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    private double[] byDate(Field field)
+    {
+        double[] values = byDate[field.ordinal()];
+        if(values==null)
+        {
+            throw new IllegalArgumentException("field not loaded "+field);
+        }
+        return values;
+    }
+    private double[] bySymbol(Field field)
+    {
+        double[] values = bySymbol[field.ordinal()];
+        if(values==null)
+        {
+            throw new IllegalArgumentException("field not loaded "+field);
+        }
+        return values;
+    }
+
+    public int getDays()
+    {
+        return day.length;
+    }
+
+    public int getSymbols()
+    {
+        return tickers.length;
+    }
+
+    public String[] getTickers()
+    {
+        return tickers.clone();
+    }
+
+    public LocalDate[] getDates()
+    {
+        LocalDate[] dates = new LocalDate[day.length];
+        for(int i=0;i<dates.length;i++)
+        {
+            dates[i] = LocalDate.ofEpochDay(day[i]);
+        }
+        return dates;
+    }
+
+    public LocalDate getDate(int index)
+    {
+        return LocalDate.ofEpochDay(day[index]);
+    }
+
+    /**
+     * position of a date in the shared axis, same result as Arrays.binarySearch
+     */
+    public int indexOf(LocalDate date)
+    {
+        return Arrays.binarySearch(day, QuoteColumns.epochDay(date));
+    }
+
+    /**
+     * position of a ticker or -1 if it is not in the universe
+     */
+    public int indexOf(String ticker)
+    {
+        Integer s = symbolIndex.get(ticker);
+        return s!=null ? s : -1;
+    }
+
+    private void checkSymbol(int symbol)
+    {
+        if(symbol<0 || symbol>=tickers.length)
+        {
+            throw new IndexOutOfBoundsException("symbol="+symbol+" symbols="+tickers.length);
+        }
+    }
+    private void checkDate(int index)
+    {
+        if(index<0 || index>=day.length)
+        {
+            throw new IndexOutOfBoundsException("date="+index+" days="+day.length);
+        }
+    }
+
+    public double get(Field field, int date, int symbol)
+    {
+        checkDate(date);
+        checkSymbol(symbol);
+        return byDate(field)[date*tickers.length+symbol];
+    }
+
+    /**
+     * values of every ticker on the date at position index, in the order of getTickers
+     */
+    public double[] getCrossSection(Field field, int index)
+    {
+        checkDate(index);
+        int symbols = tickers.length;
+        return Arrays.copyOfRange(byDate(field), index*symbols, index*symbols+symbols);
+    }
+    /**
+     * values of every ticker on a date, null if no ticker has a bar on it
+     */
+    public double[] getCrossSection(Field field, LocalDate date)
+    {
+        int index = indexOf(date);
+        return index>=0 ? getCrossSection(field, index) : null;
+    }
+
+    /**
+     * values of a ticker in the positions [from,to) of the shared axis
+     */
+    public double[] getSeries(Field field, int symbol, int from, int to)
+    {
+        int days = day.length;
+        checkSymbol(symbol);
+        if(from<0 || from>to || to>days)
+        {
+            throw new IndexOutOfBoundsException("from="+from+" to="+to+" days="+days);
+        }
+        return Arrays.copyOfRange(bySymbol(field), symbol*days+from, symbol*days+to);
+    }
+    /**
+     * values of a ticker on every date of the shared axis, null if the ticker is not in the universe
+     */
+    public double[] getSeries(Field field, String ticker)
+    {
+        int symbol = indexOf(ticker);
+        return symbol>=0 ? getSeries(field, symbol, 0, day.length) : null;
+    }
+
+    /**
+     * a copy of the time x symbol matrix of a field, value of date t and symbol s at [t*getSymbols()+s]
+     */
+    public double[] getMatrix(Field field)
+    {
+        return byDate(field).clone();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * TrailingStops.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.base.math.Nums;
+import io.nut.base.math.Round;
+import io.nut.base.util.Utils;
+
+/**
+ * Trailing stop and average true range kernels over the bar arrays, they only
+ * deal with positions so daily and intraday bars share them. A run keeps the
+ * stop of every bar, the last stop and the position of the first bar that hit
+ * the stop, or -1.
+ * <p>
+ * {@link Ticks} runs the same SafeZone and Chandelier stops over prices in
+ * long ticks with integer arithmetic only, the averages are kept as a total
+ * and a count and each stop offer is a single rounded division. The ticks
+ * are converted from the stored doubles for each call, StockQuotes does not
+ * store them.
+ *
+ * @author franci
+ */
+final class TrailingStops
+{
+    final double[] stop;
+    double value;
+    int exit = -1;
+    double exitValue;
+
+    TrailingStops(int length, double stopLoss)
+    {
+        this.stop = new double[length];
+        this.value = stopLoss;
+    }
+
+    /**
+     * checks the stop of bar i against its prices, recording the first exit
+     */
+    private void hit(int i, double[] open, double[] high, double[] low, double[] close, boolean sellShort)
+    {
+        if(i>0 && exit<0 && (sellShort ? value<high[i] : value>low[i]))
+        {
+            exit = i;
+            exitValue = exitValue(value, open[i], high[i], low[i], close[i], sellShort);
+        }
+    }
+
+    static TrailingStops parabolic(double[] open, double[] high, double[] low, double[] close, double stopLoss, double accelerationFactor, double accelerationLimit, boolean sellShort)
+    {
+        double sign = sellShort ? -1 : +1;
+        double af = accelerationFactor;
+        double[] extreme = sellShort ? low : high;
+        double[] nearby = sellShort ? high : low;
+        TrailingStops run = new TrailingStops(high.length, stopLoss);
+        double[] stop = run.stop;
+
+        double ep = extreme[0];
+        for(int i=0;i<stop.length;i++)
+        {
+            if( sellShort ? extreme[i]<ep : extreme[i]>ep)
+            {
+                ep = extreme[i];
+                af = Math.min(af + accelerationFactor, accelerationLimit);
+            }
+
+            run.hit(i, open, high, low, close, sellShort);
+
+            stopLoss = run.value;
+            double stopOffer = stopLoss + sign*af*Math.abs(ep-stopLoss);
+
+            if(sellShort ? stopOffer<nearby[i] : stopOffer>nearby[i])
+            {
+                stopOffer = sellShort ? Math.min(nearby[i], stopLoss) : Math.max(nearby[i], stopLoss);
+            }
+            else if(i>0 && (sellShort ? stopOffer<nearby[i-1] : stopOffer>nearby[i-1]))
+            {
+                stopOffer = sellShort ? Math.min(nearby[i-1], stopLoss) : Math.max(nearby[i-1], stopLoss);
+            }
+            stop[i] = run.value = stopOffer;
+        }
+        return run;
+    }
+
+    /**
+     * @param first position of the first bar of the window, the ones before it only seed the noise
+     */
+    static TrailingStops safeZone(double[] open, double[] high, double[] low, double[] close, int first, double stopLoss, double coefficient, int period, boolean sellShort, Round round, double step)
+    {
+        double[] signal = sellShort ? high : low;
+        double[] noise = averageDownsidePenetration(signal, period, sellShort);
+        return follow(open, high, low, close, first, stopLoss, signal, noise, coefficient, sellShort, round, step);
+    }
+
+    /**
+     * @param first position of the first bar of the window, the ones before it only seed the average true range
+     */
+    static TrailingStops chandelier(double[] open, double[] high, double[] low, double[] close, int first, double stopLoss, double coefficient, int period, boolean sellShort, Round round, double step)
+    {
+        double[] ep = sellShort ? low : high;
+        double[] atr = averageTrueRange(high, low, close, period);
+        return follow(open, high, low, close, first, stopLoss, ep, atr, sellShort ? coefficient : -coefficient, sellShort, round, step);
+    }
+
+    /**
+     * a stop that follows base+distance*coefficient rounded to step, never moving against the position
+     */
+    private static TrailingStops follow(double[] open, double[] high, double[] low, double[] close, int first, double stopLoss, double[] base, double[] distance, double coefficient, boolean sellShort, Round round, double step)
+    {
+        TrailingStops run = new TrailingStops(base.length, stopLoss);
+        double[] stop = run.stop;
+        for(int i=0;i<stop.length;i++)
+        {
+            if(i<first)
+            {
+                stop[i] = stopLoss;
+                continue;
+            }
+
+            run.hit(i, open, high, low, close, sellShort);
+
+            double stopOffer = round.round(base[i] + distance[i]*coefficient, step);
+
+            stop[i] = run.value = sellShort ? Math.min(stopOffer,run.value) : Math.max(stopOffer,run.value);
+        }
+        return run;
+    }
+
+    static double exitValue(double stop, double open, double high, double low, double close, boolean sellShort)
+    {
+        if(sellShort)
+        {
+            if(open>stop)
+            {
+                return open;
+            }
+            if(high>stop)
+            {
+                return stop;
+            }
+        }
+        else
+        {
+            if(open<stop)
+            {
+                return open;
+            }
+            if(low<stop)
+            {
+                return stop;
+            }
+        }
+        return 0;
+    }
+
+    static double[] averageDownsidePenetration(double[] signal, int period, boolean sellShort)
+    {
+        double[] noise = new double[signal.length];
+        double[] avg = new double[signal.length];
+        if(avg.length==0)
+        {
+            return avg;
+        }
+
+        int noiseCount = 0;
+        double noiseTotal = 0;
+
+
+        for(int i=1;i<signal.length;i++)
+        {
+            noise[i] = sellShort ? Math.max(signal[i]-signal[i-1],0) : Math.min(signal[i]-signal[i-1], 0);
+            if(noise[i]!=0)
+            {
+                noiseTotal += noise[i];
+                noiseCount++;
+            }
+            if(i>period)
+            {
+                if(noise[i-period]!=0)
+                {
+                    noiseTotal -= noise[i-period];
+                    noiseCount--;
+                }
+            }
+            avg[i] = noiseCount>0 ? noiseTotal/noiseCount : 0;
+        }
+        return avg;
+    }
+
+    /**
+     * average of the non zero true ranges of the last period bars
+     */
+    static double[] averageTrueRange(double[] high, double[] low, double[] close, int period)
+    {
+        assert high.length==low.length;
+        assert high.length==close.length;
+
+        double[] atr = new double[high.length];
+        double[] avg = new double[high.length];
+
+        if(avg.length==0)
+        {
+            return avg;
+        }
+
+        int atrCount = 1;
+        double atrTotal = avg[0] = atr[0] = high[0]-low[0];
+
+        assert atrTotal>=0;
+
+        for(int i=1;i<avg.length;i++)
+        {
+            assert (high[i]>=low[i]) :(high[i]+"<"+low[i]);
+
+            atr[i] = Nums.maxOf(high[i]-low[i], Math.abs(high[i]-close[i-1]), Math.abs(low[i]-close[i-1]));
+            if(atr[i]!=0)
+            {
+                atrTotal += atr[i];
+                atrCount++;
+            }
+            if(i>=period)
+            {
+                if(atr[i-period]!=0)
+                {
+                    atrTotal -= atr[i-period];
+                    atrCount--;
+                }
+            }
+            avg[i] = atrCount>0 ? atrTotal/atrCount : 0;
+        }
+        return avg;
+    }
+
+    /**
+     * Wilder smoothed true range, position 0 has no previous close and is left at 0
+     */
+    static double[] wilderAverageTrueRange(double[] high, double[] low, double[] close, int period)
+    {
+        double[] atr = new double[close.length];
+        double value = 0;
+        for(int i=1;i<atr.length;i++)
+        {
+            double hl = high[i]-low[i];
+            double ch = Math.abs(close[i-1]-high[i]);
+            double cl = Math.abs(close[i-1]-low[i]);
+            double tr = Utils.max(hl,ch,cl);
+            atr[i] = value = i>1 ? (value*(period-1)+tr)/period : tr;
+        }
+        return atr;
+    }
+
+    /**
+     * a stop run over prices in ticks, the coefficient is in millionths
+     */
+    static final class Ticks
+    {
+        static final long COEFFICIENT_SCALE = 1_000_000;
+
+        final long[] stop;
+        long value;
+        int exit = -1;
+        long exitValue;
+
+        private Ticks(int length, long stopLoss)
+        {
+            this.stop = new long[length];
+            this.value = stopLoss;
+        }
+
+        private void hit(int i, long[] open, long[] high, long[] low, long[] close, boolean sellShort)
+        {
+            if(i>0 && exit<0 && (sellShort ? value<high[i] : value>low[i]))
+            {
+                exit = i;
+                exitValue = exitValue(value, open[i], high[i], low[i], sellShort);
+            }
+        }
+
+        static Ticks safeZone(long[] open, long[] high, long[] low, long[] close, int first, long stopLoss, long coefficient, int period, boolean sellShort)
+        {
+            long[] signal = sellShort ? high : low;
+            long[] total = new long[signal.length];
+            int[] count = new int[signal.length];
+            long[] noise = new long[signal.length];
+            long noiseTotal = 0;
+            int noiseCount = 0;
+            for(int i=1;i<signal.length;i++)
+            {
+                noise[i] = sellShort ? Math.max(signal[i]-signal[i-1], 0) : Math.min(signal[i]-signal[i-1], 0);
+                if(noise[i]!=0)
+                {
+                    noiseTotal += noise[i];
+                    noiseCount++;
+                }
+                if(i>period && noise[i-period]!=0)
+                {
+                    noiseTotal -= noise[i-period];
+                    noiseCount--;
+                }
+                total[i] = noiseTotal;
+                count[i] = noiseCount;
+            }
+            return follow(open, high, low, close, first, stopLoss, signal, total, count, coefficient, sellShort);
+        }
+
+        static Ticks chandelier(long[] open, long[] high, long[] low, long[] close, int first, long stopLoss, long coefficient, int period, boolean sellShort)
+        {
+            int n = high.length;
+            long[] total = new long[n];
+            int[] count = new int[n];
+            long[] tr = new long[n];
+            if(n>0)
+            {
+                long atrTotal = total[0] = tr[0] = high[0]-low[0];
+                int atrCount = count[0] = 1;
+                for(int i=1;i<n;i++)
+                {
+                    tr[i] = Math.max(high[i]-low[i], Math.max(Math.abs(high[i]-close[i-1]), Math.abs(low[i]-close[i-1])));
+                    if(tr[i]!=0)
+                    {
+                        atrTotal += tr[i];
+                        atrCount++;
+                    }
+                    if(i>=period && tr[i-period]!=0)
+                    {
+                        atrTotal -= tr[i-period];
+                        atrCount--;
+                    }
+                    total[i] = atrTotal;
+                    count[i] = atrCount;
+                }
+            }
+            return follow(open, high, low, close, first, stopLoss, sellShort ? low : high, total, count, sellShort ? coefficient : -coefficient, sellShort);
+        }
+
+        /**
+         * a stop that follows base+coefficient*total/count, rounded down for
+         * long positions and up for short ones, never moving against the position
+         */
+        private static Ticks follow(long[] open, long[] high, long[] low, long[] close, int first, long stopLoss, long[] base, long[] total, int[] count, long coefficient, boolean sellShort)
+        {
+            Ticks run = new Ticks(base.length, stopLoss);
+            long[] stop = run.stop;
+            for(int i=0;i<stop.length;i++)
+            {
+                if(i<first)
+                {
+                    stop[i] = stopLoss;
+                    continue;
+                }
+
+                run.hit(i, open, high, low, close, sellShort);
+
+                long offset = 0;
+                if(count[i]>0)
+                {
+                    long num = Math.multiplyExact(total[i], coefficient);
+                    long den = count[i]*COEFFICIENT_SCALE;
+                    offset = sellShort ? -Math.floorDiv(-num, den) : Math.floorDiv(num, den);
+                }
+                long stopOffer = base[i] + offset;
+
+                stop[i] = run.value = sellShort ? Math.min(stopOffer,run.value) : Math.max(stopOffer,run.value);
+            }
+            return run;
+        }
+
+        static long exitValue(long stop, long open, long high, long low, boolean sellShort)
+        {
+            if(sellShort)
+            {
+                if(open>stop)
+                {
+                    return open;
+                }
+                if(high>stop)
+                {
+                    return stop;
+                }
+            }
+            else
+            {
+                if(open<stop)
+                {
+                    return open;
+                }
+                if(low<stop)
+                {
+                    return stop;
+                }
+            }
+            return 0;
+        }
+    }
+}
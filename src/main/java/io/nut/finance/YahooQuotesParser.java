@@ -64,6 +64,7 @@ public class YahooQuotesParser implements QuotesParser
     public int importQuotes(InputStream in, StockQuotes sq) throws ParseException
     {
         int count=0;
+        QuoteColumns batch = new QuoteColumns();
         boolean firstLine = true;
         Scanner sc = new Scanner(in, CharSets.USASCII);
 
@@ -94,7 +95,7 @@ public class YahooQuotesParser implements QuotesParser
                 double closeAdj = Parsers.safeParseDouble(data[5]);
                 double volume = Parsers.safeParseDouble(data[6]);
 
-                sq.add(date, open, high, low, close, volume);
+                batch.add(date, open, high, low, close, volume, 0);
                 count++;
             }
         }
@@ -102,8 +103,15 @@ public class YahooQuotesParser implements QuotesParser
         {
             ParseException parseException = new ParseException(ex.getMessage(), count);
             parseException.initCause(ex);
+            sq.addPartial(batch, parseException);
             throw parseException;
         }
+        catch(RuntimeException ex)
+        {
+            sq.addPartial(batch, ex);
+            throw ex;
+        }
+        sq.addAll(batch);
         return count;
     }
     @Override
@@ -0,0 +1,72 @@
+/*
+ * Buffers.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+/**
+ * Range checks and the per thread scratch arrays of the indicators, that
+ * grow to the largest size asked for up to {@link #MAX_RETAINED} values and
+ * are kept for the next call. Larger ones are allocated on each call and
+ * left to the garbage collector, so a long series does not pin its scratch
+ * to every thread that evaluated it.
+ *
+ * @author franci
+ */
+final class Buffers
+{
+    //one slot per caller, so a composite indicator never gets the scratch of another one
+    static final int MACD_SLOW = 0;
+    static final int HULL_RING = 1;
+    private static final int SLOTS = 2;
+    //8 MB per slot and thread at most
+    static final int MAX_RETAINED = 1<<20;
+
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[SLOTS][0]);
+
+    private Buffers()
+    {
+    }
+
+    /**
+     * a scratch array of this thread with at least size values, its content is undefined
+     */
+    static double[] scratch(int slot, int size)
+    {
+        double[][] slots = SCRATCH.get();
+        double[] data = slots[slot];
+        if(data.length<size)
+        {
+            if(size>MAX_RETAINED)
+            {
+                return new double[size];
+            }
+            data = slots[slot] = new double[Math.min(Math.max(size, data.length + (data.length>>1)), MAX_RETAINED)];
+        }
+        return data;
+    }
+
+    static void checkRange(int length, int from, int len)
+    {
+        if(from<0 || len<0 || len>length-from)
+        {
+            throw new IndexOutOfBoundsException("from="+from+" len="+len+" length="+length);
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package io.nut.finance.indicator;
 
 import io.nut.base.math.Round;
+import java.util.Arrays;
 
 /**
  *
@@ -45,31 +46,40 @@ public class ExponentialMovingAverage implements Indicator
     public double[] get1st(double[] value)
     {
         double[] tmp = new double[value.length];
-
+        get1st(value, 0, value.length, tmp, 0);
+        return tmp;
+    }
+    @Override
+    public int get1st(double[] value, int from, int len, double[] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        Buffers.checkRange(dst.length, offset, len);
         if(period==0)
         {
-            return tmp;
+            Arrays.fill(dst, offset, offset+len, 0);
+            return len;
         }
 
-        if(tmp.length>0)
+        if(len>0)
         {
             double k = 2.0/(period+1);
-            double ema = tmp[0] = value[0];
+            double first = value[from];
+            double ema = dst[offset] = first;
 
             int i = 1;
             if(smaStart)
             {
-                for(;i<period;i++)
+                for(;i<period && i<len;i++)
                 {
-                    tmp[i] = ema = ema + (value[i]/period) - (value[0]/period); // as SMA
+                    dst[offset+i] = ema = ema + (value[from+i]/period) - (first/period); // as SMA
                 }
             }
-            for(;i<value.length;i++)
+            for(;i<len;i++)
             {
-                tmp[i] = ema = ema + k*(value[i]-ema); //this is the same as value[i]*k + ema*(1-k);
+                dst[offset+i] = ema = ema + k*(value[from+i]-ema); //this is the same as value[i]*k + ema*(1-k);
             }
         }        
-        return tmp;
+        return len;
     }
 
     @Override
@@ -77,6 +87,11 @@ public class ExponentialMovingAverage implements Indicator
     {
         return new double[][]{get1st(value)};
     }
+    @Override
+    public int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        return get1st(value, from, len, dst[0], offset);
+    }
 
     private static final Round seedRound = Round.getCeilingInstance(0);
     
@@ -87,7 +102,88 @@ public class ExponentialMovingAverage implements Indicator
         double alpha = 2.0/(period+1);
         return (int)seedRound.round( Math.log10(error) / Math.log10(1.0-alpha) );
     }
-    
+
+    @Override
+    public Stream stream()
+    {
+        return new Stream(period, smaStart);
+    }
+
+    /**
+     * ExponentialMovingAverage one value at a time.
+     */
+    public static class Stream implements IndicatorStream
+    {
+        private final int period;
+        private final boolean smaStart;
+        private final double k;
+        private long count;
+        private double first;
+        private double ema = Double.NaN;
+
+        Stream(int period, boolean smaStart)
+        {
+            this.period = period;
+            this.smaStart = smaStart;
+            this.k = 2.0/(period+1);
+        }
+
+        @Override
+        public double update(double value)
+        {
+            if(period==0)
+            {
+                ema = 0;
+            }
+            else if(count==0)
+            {
+                first = ema = value;
+            }
+            else if(smaStart && count<period)
+            {
+                ema = ema + (value/period) - (first/period); // as SMA
+            }
+            else
+            {
+                ema = ema + k*(value-ema);
+            }
+            count++;
+            return ema;
+        }
+
+        @Override
+        public double get()
+        {
+            return ema;
+        }
+
+        @Override
+        public long count()
+        {
+            return count;
+        }
+
+        @Override
+        public Stream snapshot()
+        {
+            Stream other = new Stream(period, smaStart);
+            other.restore(this);
+            return other;
+        }
+
+        @Override
+        public void restore(IndicatorStream snapshot)
+        {
+            if(!(snapshot instanceof Stream) || ((Stream)snapshot).period!=period || ((Stream)snapshot).smaStart!=smaStart)
+            {
+                throw new IllegalArgumentException("not a snapshot of ExponentialMovingAverage("+period+","+smaStart+")");
+            }
+            Stream other = (Stream) snapshot;
+            count = other.count;
+            first = other.first;
+            ema = other.ema;
+        }
+    }
 }
 
 //https://bolsawallstreet.com/medias-moviles-simples-y-exponenciales/
\ No newline at end of file
@@ -20,6 +20,8 @@
  */
 package io.nut.finance.indicator;
 
+import java.util.Arrays;
+
 /**
  *
  * @author franci
@@ -51,33 +53,102 @@ public class HullMovingAverage implements Indicator
     public double[] get1st(double[] value)
     {
         double[] hma = new double[value.length];
+        get1st(value, 0, value.length, hma, 0);
+        return hma;
+    }
+    @Override
+    public int get1st(double[] value, int from, int len, double[] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        Buffers.checkRange(dst.length, offset, len);
         if(period==0)
         {
-            return hma;
+            Arrays.fill(dst, offset, offset+len, 0);
+            return len;
         }
 
         //HMA= WMA(2*WMA(n/2) − WMA(n)),sqrt(n))
-        if(hma.length>0)
+        //the three WMA in one pass with the running sums of WeightedMovingAverage, the first two
+        //read their windows from value and the last one from a ring with the last sqrt(n) differences
+        int half = period/2;
+        int sqrt = (int)Math.sqrt(this.period);
+        double[] ring = Buffers.scratch(Buffers.HULL_RING, sqrt);
+        double sum1 = 0;
+        double num1 = 0;
+        double sum2 = 0;
+        double num2 = 0;
+        double sum3 = 0;
+        double num3 = 0;
+        //positions in each window, i%period, i%half and i%sqrt
+        int pos1 = 0;
+        int pos2 = 0;
+        int pos3 = 0;
+        for(int i=0;i<len;i++)
         {
-            int sqrt = (int)Math.sqrt(this.period);
-            double[] wma1 = new WeightedMovingAverage(period).get1st(value);
-            double[] wma2 = new WeightedMovingAverage(period/2).get1st(value);
-            
-            
-            
-            for(int i=0;i<value.length;i++)
+            double x = value[from+i];
+            if(pos1!=0)
             {
-                hma[i] = wma2[i]*2-wma1[i];
+                num1 = num1 - sum1 + x*period;
+                sum1 = i<period ? sum1 + x : sum1 + x - value[from+i-period];
             }
-            hma = new WeightedMovingAverage(sqrt).get1st(hma);
+            else
+            {
+                sum1 = 0;
+                num1 = 0;
+                for(int j=0;j<=i&&j<period;j++)
+                {
+                    num1 += value[from+i-j] * (period-j);
+                    sum1 += value[from+i-j];
+                }
+            }
+            double wma1 = i==0 ? x : num1 / WeightedMovingAverage.weights(period, i);
+            pos1 = pos1+1==period ? 0 : pos1+1;
 
-            for(int i=0;i<wma1.length;i++)
+            double wma2 = 0;
+            if(half>0)
             {
-                System.out.printf("%.2f \t%.2f \t%.2f\n", wma2[i], wma1[i], hma[i]);
+                if(pos2!=0)
+                {
+                    num2 = num2 - sum2 + x*half;
+                    sum2 = i<half ? sum2 + x : sum2 + x - value[from+i-half];
+                }
+                else
+                {
+                    sum2 = 0;
+                    num2 = 0;
+                    for(int j=0;j<=i&&j<half;j++)
+                    {
+                        num2 += value[from+i-j] * (half-j);
+                        sum2 += value[from+i-j];
+                    }
+                }
+                wma2 = i==0 ? x : num2 / WeightedMovingAverage.weights(half, i);
+                pos2 = pos2+1==half ? 0 : pos2+1;
             }
-            
-        }        
-        return hma;
+
+            double d = wma2*2-wma1;
+            if(pos3!=0)
+            {
+                num3 = num3 - sum3 + d*sqrt;
+                sum3 = i<sqrt ? sum3 + d : sum3 + d - ring[pos3];
+                ring[pos3] = d;
+            }
+            else
+            {
+                ring[0] = d;
+                sum3 = 0;
+                num3 = 0;
+                for(int j=0;j<=i&&j<sqrt;j++)
+                {
+                    double v = ring[j==0 ? 0 : sqrt-j];
+                    num3 += v * (sqrt-j);
+                    sum3 += v;
+                }
+            }
+            dst[offset+i] = i==0 ? d : num3 / WeightedMovingAverage.weights(sqrt, i);
+            pos3 = pos3+1==sqrt ? 0 : pos3+1;
+        }
+        return len;
     }
 
     @Override
@@ -85,10 +156,91 @@ public class HullMovingAverage implements Indicator
     {
         return new double[][]{get1st(value)};
     }
+    @Override
+    public int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        return get1st(value, from, len, dst[0], offset);
+    }
 
     @Override
     public int seedSize(double weight)
     {
         return period;
     }
+
+    @Override
+    public Stream stream()
+    {
+        return new Stream(period);
+    }
+
+    /**
+     * HullMovingAverage one value at a time, over the streams of its three
+     * WeightedMovingAverage.
+     */
+    public static class Stream implements IndicatorStream
+    {
+        private final int period;
+        private final WeightedMovingAverage.Stream wma1;
+        private final WeightedMovingAverage.Stream wma2;
+        private final WeightedMovingAverage.Stream wma3;
+        private long count;
+        private double hma = Double.NaN;
+
+        Stream(int period)
+        {
+            this.period = period;
+            this.wma1 = new WeightedMovingAverage.Stream(period);
+            this.wma2 = new WeightedMovingAverage.Stream(period/2);
+            this.wma3 = new WeightedMovingAverage.Stream((int)Math.sqrt(period));
+        }
+
+        @Override
+        public double update(double value)
+        {
+            count++;
+            if(period==0)
+            {
+                return hma = 0;
+            }
+            double w1 = wma1.update(value);
+            double w2 = wma2.update(value);
+            return hma = wma3.update(w2*2-w1);
+        }
+
+        @Override
+        public double get()
+        {
+            return hma;
+        }
+
+        @Override
+        public long count()
+        {
+            return count;
+        }
+
+        @Override
+        public Stream snapshot()
+        {
+            Stream other = new Stream(period);
+            other.restore(this);
+            return other;
+        }
+
+        @Override
+        public void restore(IndicatorStream snapshot)
+        {
+            if(!(snapshot instanceof Stream) || ((Stream)snapshot).period!=period)
+            {
+                throw new IllegalArgumentException("not a snapshot of HullMovingAverage("+period+")");
+            }
+            Stream other = (Stream) snapshot;
+            wma1.restore(other.wma1);
+            wma2.restore(other.wma2);
+            wma3.restore(other.wma3);
+            count = other.count;
+            hma = other.hma;
+        }
+    }
 }
@@ -20,6 +20,8 @@
  */
 package io.nut.finance.indicator;
 
+import java.util.Arrays;
+
 /**
  *
  * @author franci
@@ -29,4 +31,49 @@ public interface Indicator
     int seedSize(double weight);
     double[] get1st(double[] value);
     double[][] getAll(double[] value);    
+    /**
+     * evaluates the indicator over value[from,from+len) as if it were the
+     * whole series and writes its first line into dst from offset, dst must
+     * not overlap that range. The default copies the range and calls
+     * get1st(double[]), the indicators of this package do not allocate.
+     * @return len
+     * @throws IndexOutOfBoundsException if a range is out of its array
+     */
+    default int get1st(double[] value, int from, int len, double[] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        Buffers.checkRange(dst.length, offset, len);
+        System.arraycopy(get1st(Arrays.copyOfRange(value, from, from+len)), 0, dst, offset, len);
+        return len;
+    }
+    /**
+     * like get1st, writing every line k of the indicator into dst[k]. The
+     * default copies the range and calls getAll(double[]).
+     * @return len
+     * @throws IndexOutOfBoundsException if a range is out of its array
+     */
+    default int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        double[][] all = getAll(Arrays.copyOfRange(value, from, from+len));
+        Buffers.checkRange(dst.length, 0, all.length);
+        for(int k=0;k<all.length;k++)
+        {
+            Buffers.checkRange(dst[k].length, offset, len);
+        }
+        for(int k=0;k<all.length;k++)
+        {
+            System.arraycopy(all[k], 0, dst[k], offset, len);
+        }
+        return len;
+    }
+    /**
+     * a stream at the start of a series, the indicators of this package have
+     * one and other implementations may not
+     * @throws UnsupportedOperationException if the indicator cannot stream
+     */
+    default IndicatorStream stream()
+    {
+        throw new UnsupportedOperationException("no stream for "+getClass().getName());
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * IndicatorStream.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+/**
+ * The streaming counterpart of an Indicator, fed one value at a time.
+ * <p>
+ * Feeding the values of an array gives the same results, bit by bit, as
+ * {@link Indicator#get1st} over that array. Updates do not allocate.
+ *
+ * @author franci
+ */
+public interface IndicatorStream
+{
+    /**
+     * adds the next value
+     * @return the value of the indicator for it
+     */
+    double update(double value);
+    /**
+     * the value returned by the last update, NaN before the first one
+     */
+    double get();
+    /**
+     * the number of values added
+     */
+    long count();
+    /**
+     * a copy of the current state, that keeps it while this one is updated
+     */
+    IndicatorStream snapshot();
+    /**
+     * puts back a state taken by snapshot
+     * @throws IllegalArgumentException if it was not taken from an equal indicator
+     */
+    void restore(IndicatorStream snapshot);
+}
@@ -60,28 +60,46 @@ public class MovingAverageConvergenceDivergence implements Indicator
     @Override
     public double[] get1st(double[] value)
     {
-        return getAll(value)[0];
+        double[] macd = new double[value.length];
+        get1st(value, 0, value.length, macd, 0);
+        return macd;
     }
     @Override
-    public double[][] getAll(double[] value)
+    public int get1st(double[] value, int from, int len, double[] dst, int offset)
     {
-        double[] fast = this.fastEma.get1st(value);
-        double[] slow = this.slowEma.get1st(value);
-        
-        double[] macd = new double[value.length];
-        for(int i=0;i<macd.length;i++)
+        this.fastEma.get1st(value, from, len, dst, offset);
+        double[] slow = Buffers.scratch(Buffers.MACD_SLOW, len);
+        this.slowEma.get1st(value, from, len, slow, 0);
+        for(int i=0;i<len;i++)
         {
-            macd[i] = fast[i]-slow[i];
+            dst[offset+i] -= slow[i];
         }
-        
-        double[] signal = this.signalEma.get1st(macd);
-        
-        double[] histogram = new double[value.length];
-        for(int i=0;i<histogram.length;i++)
+        return len;
+    }
+    @Override
+    public double[][] getAll(double[] value)
+    {
+        double[][] all = new double[3][value.length];
+        getAll(value, 0, value.length, all, 0);
+        return all;
+    }
+    /**
+     * writes the macd, signal and histogram lines into dst[0], dst[1] and dst[2]
+     */
+    @Override
+    public int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        double[] macd = dst[0];
+        double[] signal = dst[1];
+        double[] histogram = dst[2];
+        get1st(value, from, len, macd, offset);
+        this.signalEma.get1st(macd, offset, len, signal, offset);
+        Buffers.checkRange(histogram.length, offset, len);
+        for(int i=offset;i<offset+len;i++)
         {
             histogram[i] = macd[i]-signal[i];
         }
-        return new double[][]{macd, signal, histogram};
+        return len;
     }
 
     @Override
@@ -92,4 +110,89 @@ public class MovingAverageConvergenceDivergence implements Indicator
         int signalSeed = signalEma.seedSize(weight);
         return Utils.max(fastSeed, slowSeed)+signalSeed;
     }
+
+    @Override
+    public Stream stream()
+    {
+        return new Stream(fastPeriod, slowPeriod, signalPeriod, smaStart);
+    }
+
+    /**
+     * MovingAverageConvergenceDivergence one value at a time, update returns
+     * the macd line and the signal line and the histogram are kept aside.
+     */
+    public static class Stream implements IndicatorStream
+    {
+        private final int fastPeriod;
+        private final int slowPeriod;
+        private final int signalPeriod;
+        private final boolean smaStart;
+        private final ExponentialMovingAverage.Stream fast;
+        private final ExponentialMovingAverage.Stream slow;
+        private final ExponentialMovingAverage.Stream signal;
+        private double macd = Double.NaN;
+        private double histogram = Double.NaN;
+
+        Stream(int fastPeriod, int slowPeriod, int signalPeriod, boolean smaStart)
+        {
+            this.fastPeriod = fastPeriod;
+            this.slowPeriod = slowPeriod;
+            this.signalPeriod = signalPeriod;
+            this.smaStart = smaStart;
+            this.fast = new ExponentialMovingAverage.Stream(fastPeriod, smaStart);
+            this.slow = new ExponentialMovingAverage.Stream(slowPeriod, smaStart);
+            this.signal = new ExponentialMovingAverage.Stream(signalPeriod, smaStart);
+        }
+
+        @Override
+        public double update(double value)
+        {
+            macd = fast.update(value)-slow.update(value);
+            histogram = macd-signal.update(macd);
+            return macd;
+        }
+
+        @Override
+        public double get()
+        {
+            return macd;
+        }
+        public double getSignal()
+        {
+            return signal.get();
+        }
+        public double getHistogram()
+        {
+            return histogram;
+        }
+
+        @Override
+        public long count()
+        {
+            return fast.count();
+        }
+
+        @Override
+        public Stream snapshot()
+        {
+            Stream other = new Stream(fastPeriod, slowPeriod, signalPeriod, smaStart);
+            other.restore(this);
+            return other;
+        }
+
+        @Override
+        public void restore(IndicatorStream snapshot)
+        {
+            Stream other = snapshot instanceof Stream ? (Stream) snapshot : null;
+            if(other==null || other.fastPeriod!=fastPeriod || other.slowPeriod!=slowPeriod || other.signalPeriod!=signalPeriod || other.smaStart!=smaStart)
+            {
+                throw new IllegalArgumentException("not a snapshot of MovingAverageConvergenceDivergence("+fastPeriod+","+slowPeriod+","+signalPeriod+","+smaStart+")");
+            }
+            fast.restore(other.fast);
+            slow.restore(other.slow);
+            signal.restore(other.signal);
+            macd = other.macd;
+            histogram = other.histogram;
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * MovingAverageSweep.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+import java.util.stream.IntStream;
+
+/**
+ * SimpleMovingAverage and ExponentialMovingAverage for a whole range of
+ * periods over one series, as a matrix with a row per period.
+ * <p>
+ * The simple averages are taken from one prefix sum of the series, they
+ * match SimpleMovingAverage up to rounding. The exponential averages of a
+ * block of periods are advanced together in one pass over the series, they
+ * match ExponentialMovingAverage exactly. Blocks of periods run in parallel
+ * when there is enough work.
+ *
+ * @author franci
+ */
+public final class MovingAverageSweep
+{
+    //periods advanced together, also the unit of parallel work
+    static final int BLOCK = 16;
+    //below this number of values in the matrix a single thread is faster
+    private static final long PARALLEL_THRESHOLD = 1L<<16;
+
+    private MovingAverageSweep()
+    {
+    }
+
+    /**
+     * the SimpleMovingAverage of value for every period from minPeriod to
+     * maxPeriod, row r has the period minPeriod+r
+     */
+    public static double[][] simple(double[] value, int minPeriod, int maxPeriod)
+    {
+        checkPeriods(minPeriod, maxPeriod);
+        int n = value.length;
+        //sum[i] is the sum of the values before i
+        double[] sum = new double[n+1];
+        for(int i=0;i<n;i++)
+        {
+            sum[i+1] = sum[i] + value[i];
+        }
+        double[][] sma = new double[maxPeriod-minPeriod+1][n];
+        blocks(sma.length, n, (from, to) ->
+        {
+            for(int r=from;r<to;r++)
+            {
+                int period = minPeriod+r;
+                double[] row = sma[r];
+                //until there are period values the missing ones count as the first one, like SimpleMovingAverage
+                int warm = Math.min(period-1, n);
+                for(int i=0;i<warm;i++)
+                {
+                    row[i] = ((period-1-i)*value[0] + sum[i+1]) / period;
+                }
+                for(int i=warm;i<n;i++)
+                {
+                    row[i] = (sum[i+1] - sum[i+1-period]) / period;
+                }
+            }
+        });
+        return sma;
+    }
+
+    /**
+     * the ExponentialMovingAverage of value for every period from minPeriod
+     * to maxPeriod, row r has the period minPeriod+r
+     */
+    public static double[][] exponential(double[] value, int minPeriod, int maxPeriod, boolean smaStart)
+    {
+        checkPeriods(minPeriod, maxPeriod);
+        int n = value.length;
+        double[][] ema = new double[maxPeriod-minPeriod+1][n];
+        if(n==0)
+        {
+            return ema;
+        }
+        blocks(ema.length, n, (from, to) ->
+        {
+            int count = to-from;
+            double[] k = new double[count];
+            double[] last = new double[count];
+            for(int j=0;j<count;j++)
+            {
+                k[j] = 2.0/(minPeriod+from+j+1);
+                last[j] = ema[from+j][0] = value[0];
+            }
+            //the longest period of the block is the last one that is still an SMA
+            int warm = smaStart ? Math.min(minPeriod+to-1, n) : 1;
+            for(int i=1;i<warm;i++)
+            {
+                double x = value[i];
+                for(int j=0;j<count;j++)
+                {
+                    int period = minPeriod+from+j;
+                    last[j] = i<period ? last[j] + (x/period) - (value[0]/period) : last[j] + k[j]*(x-last[j]);
+                    ema[from+j][i] = last[j];
+                }
+            }
+            for(int i=Math.max(warm, 1);i<n;i++)
+            {
+                double x = value[i];
+                for(int j=0;j<count;j++)
+                {
+                    ema[from+j][i] = last[j] = last[j] + k[j]*(x-last[j]);
+                }
+            }
+        });
+        return ema;
+    }
+
+    private interface Block
+    {
+        void run(int from, int to);
+    }
+    /**
+     * runs block over the rows in groups of BLOCK, in parallel when the matrix is large enough
+     */
+    private static void blocks(int rows, int n, Block block)
+    {
+        int blocks = (rows+BLOCK-1)/BLOCK;
+        IntStream stream = IntStream.range(0, blocks);
+        if(blocks>1 && (long)rows*n>=PARALLEL_THRESHOLD)
+        {
+            stream = stream.parallel();
+        }
+        stream.forEach(b -> block.run(b*BLOCK, Math.min(b*BLOCK+BLOCK, rows)));
+    }
+
+    private static void checkPeriods(int minPeriod, int maxPeriod)
+    {
+        if(minPeriod<1 || maxPeriod<minPeriod)
+        {
+            throw new IllegalArgumentException("periods "+minPeriod+".."+maxPeriod);
+        }
+    }
+}
@@ -20,6 +20,8 @@
  */
 package io.nut.finance.indicator;
 
+import java.util.Arrays;
+
 /**
  *
  * @author franci
@@ -37,22 +39,30 @@ public class SimpleMovingAverage implements Indicator
     public double[] get1st(double[] value)
     {
         double[] tmp = new double[value.length];
-
+        get1st(value, 0, value.length, tmp, 0);
+        return tmp;
+    }
+    @Override
+    public int get1st(double[] value, int from, int len, double[] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        Buffers.checkRange(dst.length, offset, len);
         if(period==0)
         {
-            return tmp;
+            Arrays.fill(dst, offset, offset+len, 0);
+            return len;
         }
 
-        if(tmp.length>0)
+        if(len>0)
         {
-            double sma = tmp[0] = value[0];
-            for(int i=1;i<value.length;i++)
+            double sma = dst[offset] = value[from];
+            for(int i=1;i<len;i++)
             {
                 int i_p = Math.max(i-period,0);
-                tmp[i] = sma = sma + (value[i]/period) - (value[i_p]/period);
+                dst[offset+i] = sma = sma + (value[from+i]/period) - (value[from+i_p]/period);
             }
         }        
-        return tmp;
+        return len;
     }
 
     @Override
@@ -60,10 +70,97 @@ public class SimpleMovingAverage implements Indicator
     {
         return new double[][]{get1st(value)};
     }
+    @Override
+    public int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        return get1st(value, from, len, dst[0], offset);
+    }
 
     @Override
     public int seedSize(double weight)
     {
         return period;
     }
+
+    @Override
+    public Stream stream()
+    {
+        return new Stream(period);
+    }
+
+    /**
+     * SimpleMovingAverage one value at a time, it keeps the last period values.
+     */
+    public static class Stream implements IndicatorStream
+    {
+        private final int period;
+        private final double[] ring;
+        private long count;
+        private double first;
+        private double sma = Double.NaN;
+
+        Stream(int period)
+        {
+            this.period = period;
+            this.ring = new double[period];
+        }
+
+        @Override
+        public double update(double value)
+        {
+            if(period==0)
+            {
+                count++;
+                return sma = 0;
+            }
+            int pos = (int) (count%period);
+            if(count==0)
+            {
+                first = sma = value;
+            }
+            else
+            {
+                //the value that leaves the window, the first one until there are period values
+                double old = count<period ? first : ring[pos];
+                sma = sma + (value/period) - (old/period);
+            }
+            ring[pos] = value;
+            count++;
+            return sma;
+        }
+
+        @Override
+        public double get()
+        {
+            return sma;
+        }
+
+        @Override
+        public long count()
+        {
+            return count;
+        }
+
+        @Override
+        public Stream snapshot()
+        {
+            Stream other = new Stream(period);
+            other.restore(this);
+            return other;
+        }
+
+        @Override
+        public void restore(IndicatorStream snapshot)
+        {
+            if(!(snapshot instanceof Stream) || ((Stream)snapshot).period!=period)
+            {
+                throw new IllegalArgumentException("not a snapshot of SimpleMovingAverage("+period+")");
+            }
+            Stream other = (Stream) snapshot;
+            System.arraycopy(other.ring, 0, ring, 0, period);
+            count = other.count;
+            first = other.first;
+            sma = other.sma;
+        }
+    }
 }
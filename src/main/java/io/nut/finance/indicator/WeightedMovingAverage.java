@@ -20,6 +20,8 @@
  */
 package io.nut.finance.indicator;
 
+import java.util.Arrays;
+
 /**
  *
  * @author franci
@@ -37,29 +39,46 @@ public class WeightedMovingAverage implements Indicator
     public double[] get1st(double[] value)
     {
         double[] tmp = new double[value.length];
-
+        get1st(value, 0, value.length, tmp, 0);
+        return tmp;
+    }
+    @Override
+    public int get1st(double[] value, int from, int len, double[] dst, int offset)
+    {
+        Buffers.checkRange(value.length, from, len);
+        Buffers.checkRange(dst.length, offset, len);
         if(period==0)
         {
-            return tmp;
+            Arrays.fill(dst, offset, offset+len, 0);
+            return len;
         }
 
-        if(tmp.length>0)
+        //running sums of the window, sum of values and num of weighted values
+        double sum = 0;
+        double num = 0;
+        for(int i=0;i<len;i++)
         {
-            tmp[0] = value[0];
-            for(int i=1;i<value.length;i++)
+            double x = value[from+i];
+            if(i%period!=0)
             {
-                double num = 0;
-                double den = 0;
+                //every weight drops by one, the value leaving the window had weight one
+                num = num - sum + x*period;
+                sum = i<period ? sum + x : sum + x - value[from+i-period];
+            }
+            else
+            {
+                //summed again once per period so rounding errors do not build up
+                sum = 0;
+                num = 0;
                 for(int j=0;j<=i&&j<this.period;j++)
                 {
-                    int p = this.period-j;
-                    num += value[i-j] * p;
-                    den += p;
+                    num += value[from+i-j] * (this.period-j);
+                    sum += value[from+i-j];
                 }
-                tmp[i] = num / den;
             }
-        }        
-        return tmp;
+            dst[offset+i] = i==0 ? x : num / weights(period, i);
+        }
+        return len;
     }
 
     @Override
@@ -67,10 +86,120 @@ public class WeightedMovingAverage implements Indicator
     {
         return new double[][]{get1st(value)};
     }
+    @Override
+    public int getAll(double[] value, int from, int len, double[][] dst, int offset)
+    {
+        return get1st(value, from, len, dst[0], offset);
+    }
+
+    /**
+     * the sum of the weights at position i, period, period-1, ... for the values in the window
+     */
+    static double weights(int period, long i)
+    {
+        long m = Math.min(i, period-1);
+        return (m+1)*period - m*(m+1)/2;
+    }
 
     @Override
     public int seedSize(double weight)
     {
         return period;
     }
+
+    @Override
+    public Stream stream()
+    {
+        return new Stream(period);
+    }
+
+    /**
+     * WeightedMovingAverage one value at a time, it keeps the last period values.
+     */
+    public static class Stream implements IndicatorStream
+    {
+        private final int period;
+        private final double[] ring;
+        private long count;
+        //position of the next value in ring, count%period
+        private int pos;
+        private double sum;
+        private double num;
+        private double wma = Double.NaN;
+
+        Stream(int period)
+        {
+            this.period = period;
+            this.ring = new double[period];
+        }
+
+        @Override
+        public double update(double value)
+        {
+            if(period==0)
+            {
+                count++;
+                return wma = 0;
+            }
+            //the same running sums and the same operations as get1st
+            if(pos!=0)
+            {
+                num = num - sum + value*period;
+                sum = count<period ? sum + value : sum + value - ring[pos];
+                ring[pos] = value;
+            }
+            else
+            {
+                ring[pos] = value;
+                sum = 0;
+                num = 0;
+                for(int j=0;j<=count&&j<this.period;j++)
+                {
+                    double v = ring[j==0 ? 0 : period-j];
+                    num += v * (this.period-j);
+                    sum += v;
+                }
+            }
+            wma = count==0 ? value : num / weights(period, count);
+            count++;
+            pos = pos+1==period ? 0 : pos+1;
+            return wma;
+        }
+
+        @Override
+        public double get()
+        {
+            return wma;
+        }
+
+        @Override
+        public long count()
+        {
+            return count;
+        }
+
+        @Override
+        public Stream snapshot()
+        {
+            Stream other = new Stream(period);
+            other.restore(this);
+            return other;
+        }
+
+        @Override
+        public void restore(IndicatorStream snapshot)
+        {
+            if(!(snapshot instanceof Stream) || ((Stream)snapshot).period!=period)
+            {
+                throw new IllegalArgumentException("not a snapshot of WeightedMovingAverage("+period+")");
+            }
+            Stream other = (Stream) snapshot;
+            System.arraycopy(other.ring, 0, ring, 0, period);
+            count = other.count;
+            pos = other.pos;
+            sum = other.sum;
+            num = other.num;
+            wma = other.wma;
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * CompressedQuotesTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.Quote;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author franci
+ */
+public class CompressedQuotesTest
+{
+    private static StockQuotes loadSPY() throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes("SPY", true, 2, 0.01);
+        try( InputStream in = StockQuotesTest.getSPY1993to2018())
+        {
+            new YahooQuotesParser().importQuotes(in, sq);
+        }
+        sq.addDividend(LocalDate.parse("2017-12-15"), 1.35);
+        sq.addDividend(LocalDate.parse("2017-09-15"), 1.23);
+        return sq;
+    }
+
+    /**
+     * Test of compress and get methods, of class CompressedQuotes.
+     */
+    @Test
+    public void testGet() throws IOException, ParseException
+    {
+        StockQuotes sq = loadSPY();
+        //prices that are not decimal, stored raw
+        Random random = new Random(7);
+        for(int i=0;i<20;i++)
+        {
+            LocalDate date = LocalDate.parse("2018-03-01").plusDays(i);
+            double price = 270+random.nextDouble();
+            sq.add(date, price, price+random.nextDouble(), i%5==0 ? 0 : price-random.nextDouble(), price, i%7==0 ? 0 : 1e6);
+        }
+        CompressedQuotes cq = CompressedQuotes.compress(sq);
+        assertEquals("SPY", cq.getTicker());
+        assertEquals(sq.size(), cq.size());
+
+        StockQuotes all = cq.get();
+        assertTrue(all.isReadOnly());
+        List<Quote> expected = sq.getQuotes();
+        List<Quote> decoded = all.getQuotes();
+        assertEquals(expected.size(), decoded.size());
+        for(int i=0;i<expected.size();i++)
+        {
+            Quote e = expected.get(i);
+            Quote d = decoded.get(i);
+            assertEquals(e.date, d.date);
+            assertArrayEquals(new double[]{e.open, e.high, e.low, e.close, e.volume, e.dividend}, new double[]{d.open, d.high, d.low, d.close, d.volume, d.dividend}, 0.0);
+        }
+
+        LocalDate[] dates = sq.getDate(null, null, false);
+        for(int[] range : new int[][]{{0, 10}, {1000, 1024}, {1023, 1025}, {5000, 5100}, {dates.length-30, dates.length-1}})
+        {
+            LocalDate start = dates[range[0]];
+            LocalDate end = dates[range[1]];
+            StockQuotes part = cq.get(start, end);
+            assertArrayEquals(sq.getDate(start, end, false), part.getDate(null, null, false));
+            assertArrayEquals(sq.getClose(start, end, false), part.getClose(null, null, false), 1e-9);
+            assertArrayEquals(sq.getLow(start, end, false), part.getLow(null, null, false), 1e-9);
+            assertArrayEquals(sq.getVomume(start, end, false), part.getVomume(null, null, false), 0.0);
+        }
+        assertEquals(0, cq.get(LocalDate.parse("1980-01-01"), LocalDate.parse("1980-12-31")).size());
+        assertEquals(0, cq.get(LocalDate.parse("2030-01-01"), null).size());
+        assertEquals(0, CompressedQuotes.compress(new StockQuotes()).get().size());
+        assertThrows(IllegalArgumentException.class, () -> cq.get(dates[1], dates[0]));
+
+        //negative zeros must come back with their sign
+        StockQuotes zeros = new StockQuotes("ZERO", false, 2, 0.01);
+        zeros.add(LocalDate.parse("2018-01-02"), 1.5, -0.0, 1.25, 1.5, 100);
+        zeros.add(LocalDate.parse("2018-01-03"), 1.5, 1.75, 1.25, -0.0, 0);
+        zeros.addDividend(LocalDate.parse("2018-01-03"), -0.0);
+        List<Quote> signed = CompressedQuotes.compress(zeros).get().getQuotes();
+        for(int i=0;i<2;i++)
+        {
+            Quote e = zeros.getQuotes().get(i);
+            Quote d = signed.get(i);
+            assertEquals(Double.doubleToRawLongBits(e.high), Double.doubleToRawLongBits(d.high));
+            assertEquals(Double.doubleToRawLongBits(e.close), Double.doubleToRawLongBits(d.close));
+            assertEquals(Double.doubleToRawLongBits(e.dividend), Double.doubleToRawLongBits(d.dividend));
+        }
+    }
+
+    /**
+     * Memory and decode throughput of class CompressedQuotes against the
+     * plain columns.
+     */
+    @Test
+    public void testCompressionBenchmark() throws IOException, ParseException
+    {
+        StockQuotes sq = loadSPY();
+        CompressedQuotes cq = CompressedQuotes.compress(sq);
+        int n = sq.size();
+        //keys, open, high, low, close, volume and dividend
+        long plainBytes = 7L*Long.BYTES*n;
+        double bytesPerBar = cq.getBytes()/(double)n;
+        assertTrue(cq.getBytes()*2<plainBytes, "bytes per bar "+bytesPerBar);
+
+        int rounds = 20;
+        QuoteColumns cols = sq.snapshot();
+        long decodeNanos = 0;
+        long copyNanos = 0;
+        for(int r=0;r<rounds;r++)
+        {
+            long t0 = System.nanoTime();
+            QuoteColumns decoded = cq.decode(Long.MIN_VALUE, Long.MAX_VALUE);
+            long t1 = System.nanoTime();
+            QuoteColumns copy = cols.copy(n);
+            long t2 = System.nanoTime();
+            decodeNanos += t1-t0;
+            copyNanos += t2-t1;
+            assertEquals(copy.size, decoded.size);
+        }
+        if(StockQuotesTest.DEBUG)
+        {
+            System.out.printf("compressed %d bars: %.2f bytes/bar (plain %d), decode %.1f Mbars/s, copy %.1f Mbars/s%n",
+                    n, bytesPerBar, plainBytes/n, n*rounds*1e3/decodeNanos, n*rounds*1e3/copyNanos);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * IntradayQuotesTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.Field;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author franci
+ */
+public class IntradayQuotesTest
+{
+    private static final long DAY = 86400;
+    private static final long OPEN = 9*3600+1800;
+
+    private static long time(LocalDate date)
+    {
+        return date.toEpochDay()*DAY+OPEN;
+    }
+
+    /**
+     * Test of the getters of class IntradayQuotes, daily bars keyed by their
+     * opening time must give the same results as StockQuotes.
+     */
+    @Test
+    public void testSameAsDaily() throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes("KO", false, 2, 0.01);
+        try( InputStream in = new GZIPInputStream(IntradayQuotesTest.class.getResourceAsStream("finance.yahoo-ko.csv.gz")))
+        {
+            new YahooQuotesParser().importQuotes(in, sq);
+        }
+        IntradayQuotes iq = new IntradayQuotes("KO", 2, 0.01);
+        for(StockQuotes.Quote q : sq.getQuotes())
+        {
+            iq.add(time(q.date), q.open, q.high, q.low, q.close, q.volume);
+        }
+        assertEquals(sq.size(), iq.size());
+        assertEquals(time(sq.firstKey()), iq.firstTime());
+        assertEquals(time(sq.lastKey()), iq.lastTime());
+
+        LocalDate start = LocalDate.parse("2017-03-01");
+        LocalDate end = LocalDate.parse("2017-08-31");
+        long from = time(start);
+        long to = time(end);
+
+        assertArrayEquals(sq.getClose(start, end, false), iq.getClose(from, to, false));
+        assertArrayEquals(sq.getHigh(50, end, true), iq.getHigh(50, to, true));
+        assertArrayEquals(sq.getVomume(start, end, false), iq.getVolume(from, to, false));
+        assertArrayEquals(sq.getSimpleMovingAverage(start, end, 20, false), iq.getSimpleMovingAverage(from, to, 20, false));
+        assertArrayEquals(sq.getExponentialMovingAverage(100, end, 20, false), iq.getExponentialMovingAverage(100, to, 20, false));
+
+        LocalDate[] dates = sq.getDate(start, end, false);
+        long[] times = iq.getTime(from, to, false);
+        assertEquals(dates.length, times.length);
+        for(int i=0;i<times.length;i++)
+        {
+            assertEquals(time(dates[i]), times[i]);
+        }
+
+        StockQuotes.AverageTrueRange atr = sq.getAverageTrueRange(30, end, 14);
+        IntradayQuotes.AverageTrueRange iatr = iq.getAverageTrueRange(30, to, 14);
+        assertEquals(atr.value, iatr.value);
+        assertArrayEquals(atr.history, iatr.history);
+        assertEquals(time(atr.firstDay), iatr.firstTime);
+        assertEquals(time(atr.lastDay), iatr.lastTime);
+
+        double price = sq.getClose(1, start, false)[0];
+        for(boolean sellShort : new boolean[]{false, true})
+        {
+            double stopLoss = sellShort ? price*1.05 : price*0.95;
+            assertStopEquals(sq.getParabolicStop(start, end, stopLoss, 0.02, 0.2, sellShort), iq.getParabolicStop(from, to, stopLoss, 0.02, 0.2, sellShort));
+            assertStopEquals(sq.getSafeZoneStop(start, end, stopLoss, 2, 10, sellShort), iq.getSafeZoneStop(from, to, stopLoss, 2, 10, sellShort));
+            assertStopEquals(sq.getChandelierStop(start, end, stopLoss, 3, 22, sellShort), iq.getChandelierStop(from, to, stopLoss, 3, 22, sellShort));
+        }
+    }
+    private static void assertStopEquals(StockQuotes.TrailingStop expected, IntradayQuotes.TrailingStop result)
+    {
+        assertEquals(expected.value, result.value);
+        assertEquals(expected.count, result.count);
+        assertArrayEquals(expected.historyValues, result.historyValues);
+        assertEquals(time(expected.firstDay), result.firstTime);
+        assertEquals(time(expected.lastDay), result.lastTime);
+        assertEquals(expected.exitAt!=null, result.exit);
+        if(result.exit)
+        {
+            assertEquals(time(expected.exitAt), result.exitAt);
+        }
+        assertEquals(expected.exitValue, result.exitValue);
+    }
+
+    /**
+     * Test of add and addAll methods, of class IntradayQuotes, with a year of
+     * minute bars.
+     */
+    @Test
+    public void testMinuteBars()
+    {
+        int n = 400_000;
+        long t0 = time(LocalDate.parse("2020-01-02"));
+        long[] time = new long[n];
+        double[] price = new double[n];
+        for(int i=0;i<n;i++)
+        {
+            time[i] = t0+60L*i;
+            price[i] = 100+Math.sin(i/500.0)*10;
+        }
+        IntradayQuotes iq = new IntradayQuotes("SPY", 2, 0.01);
+        for(int i=0;i<n;i++)
+        {
+            iq.add(time[i], price[i], price[i]+0.5, price[i]-0.5, price[i], 1000);
+        }
+        assertEquals(n, iq.size());
+        assertEquals(time[n-1], iq.lastTime());
+
+        //replaces a bar and fills a zero price from the previous bar
+        assertTrue(iq.add(time[10], price[10], price[10]+0.5, price[10]-0.5, 0, 1000));
+        assertEquals(price[9], iq.getClose(2, time[10], false)[1]);
+
+        //out of order batch, the last repeated time wins
+        IntradayQuotes batch = new IntradayQuotes();
+        double[] ones = {1, 2, 3, 4};
+        assertEquals(3, batch.addAll(new long[]{t0+120, t0, t0+60, t0}, ones, ones, ones, ones, ones));
+        assertArrayEquals(new long[]{t0, t0+60, t0+120}, batch.getTime(Long.MIN_VALUE, Long.MAX_VALUE, false));
+        assertArrayEquals(new double[]{4, 3, 1}, batch.getClose(Long.MIN_VALUE, Long.MAX_VALUE, false));
+        double[] five = {5};
+        assertEquals(0, batch.addAll(new long[]{t0+60}, five, five, five, five, five));
+        assertArrayEquals(new double[]{4, 5, 1}, batch.getClose(Long.MIN_VALUE, Long.MAX_VALUE, false));
+
+        double[] close = iq.getClose(t0+60*1000, t0+60*2000-1, false);
+        assertEquals(1000, close.length);
+        IntradayQuotes.Bars bars = iq.getBars(100, Long.MAX_VALUE, Field.High, Field.Low);
+        assertEquals(100, bars.length);
+        assertNull(bars.close);
+        assertEquals(time[n-1], bars.time[99]);
+        assertNotNull(iq.getChandelierStop(time[n-5000], Long.MAX_VALUE, price[n-5000]-5, 3, 22, false));
+        assertThrows(IllegalArgumentException.class, () -> iq.getClose(time[1], time[0], false));
+    }
+}
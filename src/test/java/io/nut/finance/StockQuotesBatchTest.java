@@ -0,0 +1,81 @@
+/*
+ * StockQuotesBatchTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.AverageTrueRange;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author franci
+ */
+public class StockQuotesBatchTest
+{
+    /**
+     * Test of run method, of class StockQuotesBatch.
+     */
+    @Test
+    public void testRun() throws IOException, ParseException, InterruptedException
+    {
+        StockQuotes spy = new StockQuotes("SPY", false, 2, 0.01);
+        try( InputStream in = new GZIPInputStream(StockQuotesBatchTest.class.getResourceAsStream("finance.yahoo_spy_1993-01-29_2018-02-23.csv.gz")))
+        {
+            new YahooQuotesParser().importQuotes(in, spy);
+        }
+        List<StockQuotes> universe = new ArrayList<>();
+        List<LocalDate> ends = new ArrayList<>();
+        for(int i=0;i<40;i++)
+        {
+            StockQuotes sq = spy.getSubStockQuotes(200+i*50, spy.lastKey().minusDays(i*30));
+            universe.add(sq);
+            ends.add(sq.lastKey());
+        }
+        universe.add(new StockQuotes("EMPTY", false, 2, 0.01));
+
+        for(StockQuotesBatch batch : new StockQuotesBatch[]{new StockQuotesBatch(), new StockQuotesBatch(3, false), new StockQuotesBatch(2, true)})
+        {
+            List<StockQuotesBatch.Result<AverageTrueRange>> results = batch.run(universe, sq -> sq.getAverageTrueRange(100, sq.lastKey(), 14));
+            assertEquals(universe.size(), results.size());
+            for(int i=0;i<universe.size()-1;i++)
+            {
+                StockQuotesBatch.Result<AverageTrueRange> result = results.get(i);
+                assertTrue(result.isOk());
+                assertSame(universe.get(i), result.quotes);
+                assertEquals(ends.get(i), result.value.lastDay);
+                assertEquals(universe.get(i).getAverageTrueRange(100, ends.get(i), 14).value, result.value.value);
+            }
+            StockQuotesBatch.Result<AverageTrueRange> failed = results.get(universe.size()-1);
+            assertFalse(failed.isOk());
+            assertNull(failed.value);
+            assertEquals("EMPTY", failed.getTicker());
+            assertTrue(failed.error instanceof java.util.NoSuchElementException);
+        }
+        assertEquals(StockQuotesBatch.isVirtualThreadsAvailable(), new StockQuotesBatch(1, true).isVirtualThreads());
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * StockQuotesFileTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.Quote;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author franci
+ */
+public class StockQuotesFileTest
+{
+    private static StockQuotes load(String ticker, String quotes, String dividends) throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes(ticker, dividends!=null, 2, 0.01);
+        YahooQuotesParser parser = new YahooQuotesParser();
+        try( InputStream in = new GZIPInputStream(StockQuotesFileTest.class.getResourceAsStream(quotes)))
+        {
+            parser.importQuotes(in, sq);
+        }
+        if(dividends!=null)
+        {
+            try( InputStream in = new GZIPInputStream(StockQuotesFileTest.class.getResourceAsStream(dividends)))
+            {
+                parser.importDividends(in, sq);
+            }
+        }
+        return sq;
+    }
+
+    /**
+     * Test of write and open methods, of class StockQuotesFile.
+     */
+    @Test
+    public void testWriteOpen() throws IOException, ParseException
+    {
+        StockQuotes ko = load("KO", "finance.yahoo-ko.csv.gz", "finance.yahoo-ko-dividends.csv.gz");
+        StockQuotes msft = load("MSFT", "finance.yahoo-msft.csv.gz", null);
+        StockQuotes empty = new StockQuotes("EMPTY", false, 4, 0.0001);
+
+        Path file = Files.createTempFile("quotes", ".bin");
+        try
+        {
+            StockQuotesFile.write(file, ko, msft, empty);
+            try(StockQuotesFile quotesFile = StockQuotesFile.open(file))
+            {
+                assertEquals(3, quotesFile.size());
+                assertArrayEquals(new String[]{"KO", "MSFT", "EMPTY"}, quotesFile.getTickers());
+                assertNull(quotesFile.get("SPY"));
+
+                for(StockQuotes expected : new StockQuotes[]{ko, msft, empty})
+                {
+                    StockQuotes actual = quotesFile.get(expected.getTicker());
+                    assertTrue(actual.isReadOnly());
+                    assertEquals(expected.isApplyDividend(), actual.isApplyDividend());
+                    assertEquals(expected.getDecimals(), actual.getDecimals());
+                    assertEquals(expected.getStep(), actual.getStep());
+                    assertEquals(expected.size(), actual.size());
+
+                    List<Quote> a = expected.getQuotes();
+                    List<Quote> b = actual.getQuotes();
+                    for(int i=0;i<a.size();i++)
+                    {
+                        assertEquals(a.get(i).date, b.get(i).date);
+                        assertEquals(a.get(i).open, b.get(i).open);
+                        assertEquals(a.get(i).high, b.get(i).high);
+                        assertEquals(a.get(i).low, b.get(i).low);
+                        assertEquals(a.get(i).close, b.get(i).close);
+                        assertEquals(a.get(i).volume, b.get(i).volume);
+                        assertEquals(a.get(i).dividend, b.get(i).dividend);
+                    }
+                    assertArrayEquals(expected.getClose(null, null, false), actual.getClose(null, null, false), 0.0);
+                    assertArrayEquals(expected.getOpen(null, null, true), actual.getOpen(null, null, true), 0.0);
+                    assertArrayEquals(expected.getHigh(100, null, false), actual.getHigh(100, null, false), 0.0);
+                    assertArrayEquals(expected.getLow(null, null, false), actual.getLow(null, null, false), 0.0);
+                    assertArrayEquals(expected.getWeekly().getClose(null, null, false), actual.getWeekly().getClose(null, null, false), 0.0);
+                    assertArrayEquals(expected.getMonthly().getVomume(null, null, false), actual.getMonthly().getVomume(null, null, false), 0.0);
+                    for(StockQuotes.Field field : StockQuotes.Field.values())
+                    {
+                        assertEquals(expected.getZeroCount(field), actual.getZeroCount(field));
+                    }
+                    if(expected.size()>0)
+                    {
+                        LocalDate start = expected.getQuotes().get(expected.size()/3).date;
+                        LocalDate end = expected.getQuotes().get(expected.size()/2).date;
+                        assertArrayEquals(expected.getClose(start, end, false), actual.getClose(start, end, false), 0.0);
+                        assertArrayEquals(expected.getSubStockQuotes(start, end).getClose(null, null, false), actual.getSubStockQuotes(start, end).getClose(null, null, false), 0.0);
+                        assertEquals(expected.getSubStockQuotes(start, end).lastValue().close, actual.getSubStockQuotes(start, end).lastValue().close);
+                    }
+                    StockQuotes copy = actual.copy();
+                    assertFalse(copy.isReadOnly());
+                    assertArrayEquals(expected.getClose(null, null, false), copy.getClose(null, null, false), 0.0);
+                    StockQuotes merged = new StockQuotes(expected.getTicker(), expected.isApplyDividend(), expected.getDecimals(), expected.getStep());
+                    merged.merge(actual);
+                    assertArrayEquals(expected.getClose(null, null, false), merged.getClose(null, null, false), 0.0);
+                }
+                StockQuotes actual = quotesFile.get("KO");
+                assertThrows(UnsupportedOperationException.class, () -> actual.add(LocalDate.now(), 1, 1, 1, 1, 1));
+                assertThrows(UnsupportedOperationException.class, () -> actual.addDividend(LocalDate.now(), 1));
+            }
+            assertThrows(IllegalArgumentException.class, () -> StockQuotesFile.write(file, ko, ko));
+
+            //the second day of KO equal to the first one
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                ByteBuffer entry = ByteBuffer.allocate(8).order(StockQuotesFile.ORDER);
+                channel.read(entry, StockQuotesFile.HEADER_BYTES);
+                long position = entry.getLong(0);
+                ByteBuffer days = ByteBuffer.allocate(8).order(StockQuotesFile.ORDER);
+                channel.read(days, position);
+                days.putInt(4, days.getInt(0));
+                days.rewind();
+                channel.write(days, position);
+            }
+            try(StockQuotesFile quotesFile = StockQuotesFile.open(file))
+            {
+                assertNotNull(quotesFile.get("MSFT"));
+                assertThrows(IOException.class, () -> quotesFile.get("KO"));
+            }
+
+            Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+            assertThrows(IOException.class, () -> StockQuotesFile.open(file));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of get method, of class StockQuotesFile, a slice read first must
+     * not limit the dividends seen by the whole store.
+     */
+    @Test
+    public void testSliceDividends() throws IOException
+    {
+        StockQuotes expected = new StockQuotes("DIV", true, 2, 0.01);
+        LocalDate date = LocalDate.parse("2017-01-02");
+        for(int i=0;i<100;i++)
+        {
+            expected.add(date.plusDays(i), 10+i, 11+i, 9+i, 10.5+i, 1000);
+        }
+        for(int i=5;i<100;i+=20)
+        {
+            expected.addDividend(date.plusDays(i), 0.25);
+        }
+        Path file = Files.createTempFile("quotes", ".bin");
+        try
+        {
+            StockQuotesFile.write(file, expected);
+            try(StockQuotesFile quotesFile = StockQuotesFile.open(file))
+            {
+                StockQuotes actual = quotesFile.get("DIV");
+                LocalDate start = date.plusDays(2);
+                LocalDate end = date.plusDays(30);
+                assertArrayEquals(expected.getSubStockQuotes(start, end).getClose(null, null, false), actual.getSubStockQuotes(start, end).getClose(null, null, false), 0.0);
+                assertArrayEquals(expected.getClose(null, null, false), actual.getClose(null, null, false), 0.0);
+                assertArrayEquals(expected.getClose(end, null, false), actual.getClose(end, null, false), 0.0);
+                assertArrayEquals(expected.getSubStockQuotes(end, date.plusDays(90)).getClose(null, null, false), actual.getSubStockQuotes(end, date.plusDays(90)).getClose(null, null, false), 0.0);
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of open method, of class StockQuotesFile, with a damaged directory.
+     */
+    @Test
+    public void testOpenCorrupted() throws IOException, ParseException
+    {
+        StockQuotes msft = load("MSFT", "finance.yahoo-msft.csv.gz", null);
+        Path file = Files.createTempFile("quotes", ".bin");
+        try
+        {
+            //position in the file and value to write there
+            long[][] damages =
+            {
+                {8, 1000},                                  //more tickers than directory entries
+                {12, 8},                                    //short directory
+                {StockQuotesFile.HEADER_BYTES+28, -1},      //negative name length
+                {StockQuotesFile.HEADER_BYTES+28, 1<<30},   //name past the directory
+                {StockQuotesFile.HEADER_BYTES+4, -8},       //negative offset
+                {StockQuotesFile.HEADER_BYTES, 8},          //offset inside the directory
+                {StockQuotesFile.HEADER_BYTES+8, 1<<29},    //bars past the end
+            };
+            for(long[] damage : damages)
+            {
+                StockQuotesFile.write(file, msft);
+                try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+                {
+                    ByteBuffer value = ByteBuffer.allocate(4).order(StockQuotesFile.ORDER).putInt(0, (int) damage[1]);
+                    channel.write(value, damage[0]);
+                }
+                assertThrows(IOException.class, () -> StockQuotesFile.open(file));
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of write and load methods, of class StockQuotesFile, against
+     * parsing the csv again.
+     */
+    @Test
+    public void testLoadBenchmark() throws IOException, ParseException
+    {
+        int rounds = 10;
+        long parseNanos = 0;
+        StockQuotes spy = null;
+        for(int r=0;r<rounds;r++)
+        {
+            long t0 = System.nanoTime();
+            spy = new StockQuotes("SPY", false, 2, 0.01);
+            try( InputStream in = StockQuotesTest.getSPY1993to2018())
+            {
+                new YahooQuotesParser().importQuotes(in, spy);
+            }
+            parseNanos += System.nanoTime()-t0;
+        }
+        StockQuotes ko = load("KO", "finance.yahoo-ko.csv.gz", "finance.yahoo-ko-dividends.csv.gz");
+
+        Path file = Files.createTempFile("quotes", ".bin");
+        try
+        {
+            long writeNanos = 0;
+            long loadNanos = 0;
+            long readNanos = 0;
+            double checksum = 0;
+            List<StockQuotes> loaded = null;
+            for(int r=0;r<rounds;r++)
+            {
+                long t0 = System.nanoTime();
+                StockQuotesFile.write(file, spy, ko);
+                long t1 = System.nanoTime();
+                loaded = StockQuotesFile.load(file);
+                long t2 = System.nanoTime();
+                //the bars are paged in when they are read, not when they are loaded
+                for(StockQuotes item : loaded)
+                {
+                    for(double close : item.getClose(null, null, false))
+                    {
+                        checksum += close;
+                    }
+                }
+                long t3 = System.nanoTime();
+                writeNanos += t1-t0;
+                loadNanos += t2-t1;
+                readNanos += t3-t2;
+            }
+            assertTrue(checksum>0);
+            assertEquals(2, loaded.size());
+            assertEquals("SPY", loaded.get(0).getTicker());
+            assertEquals("KO", loaded.get(1).getTicker());
+            assertTrue(loaded.get(1).isApplyDividend());
+            for(int i=0;i<2;i++)
+            {
+                StockQuotes expected = i==0 ? spy : ko;
+                assertArrayEquals(expected.getDate(null, null, false), loaded.get(i).getDate(null, null, false));
+                assertArrayEquals(expected.getClose(null, null, false), loaded.get(i).getClose(null, null, false), 0.0);
+                assertArrayEquals(expected.getVomume(null, null, false), loaded.get(i).getVomume(null, null, false), 0.0);
+            }
+            List<StockQuotes> writable = StockQuotesFile.load(file, true);
+            assertFalse(writable.get(1).isReadOnly());
+            writable.get(1).add(ko.lastKey().plusDays(1), 1, 1, 1, 1, 1);
+            assertEquals(ko.size()+1, writable.get(1).size());
+            assertTrue(loaded.get(1).isReadOnly());
+            if(StockQuotesTest.DEBUG)
+            {
+                double mb = Files.size(file)*rounds/1e6;
+                System.out.printf("snapshot %d bytes: write %.0f MB/s, load and read %.0f MB/s, parse SPY %dms vs load %dms + read closes %dms%n",
+                        Files.size(file), mb*1e9/writeNanos, mb*1e9/(loadNanos+readNanos), parseNanos/rounds/1_000_000, loadNanos/rounds/1_000_000, readNanos/rounds/1_000_000);
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+}
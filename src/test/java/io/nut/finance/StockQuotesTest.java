@@ -28,6 +28,15 @@ import java.net.URL;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -198,7 +207,568 @@ public class StockQuotesTest
         }
     }
 
-    
+
+    /**
+     * Test of add method, of class StockQuotes.
+     */
+    @Test
+    public void testAdd()
+    {
+        StockQuotes sq = new StockQuotes(2, 0.01);
+
+        assertTrue(sq.isEmpty());
+        assertFalse(sq.add(LocalDate.ofEpochDay(20), 3, 4, 2, 3, 1));
+        assertFalse(sq.add(LocalDate.ofEpochDay(10), 1, 2, 1, 1, 1));
+        assertFalse(sq.add(LocalDate.ofEpochDay(15), 2, 3, 1, 2, 1));
+        assertTrue(sq.add(LocalDate.ofEpochDay(15), 2, 3, 1, 2.5, 1));
+        assertTrue(sq.addDividend(LocalDate.ofEpochDay(15), 0.5));
+        assertFalse(sq.addDividend(LocalDate.ofEpochDay(16), 0.5));
+
+        assertEquals(3, sq.size());
+        assertEquals(LocalDate.ofEpochDay(10), sq.firstKey());
+        assertEquals(LocalDate.ofEpochDay(20), sq.lastKey());
+        assertEquals(0.5, sq.getQuotes().get(1).dividend);
+        assertArrayEquals(new double[]{1, 2.5, 3}, sq.getClose(null, null, false), 0.0);
+        assertArrayEquals(new double[]{2.5, 3}, sq.getClose(LocalDate.ofEpochDay(11), LocalDate.ofEpochDay(20), false), 0.0);
+        assertArrayEquals(new double[]{2.5, 1}, sq.getClose(2, LocalDate.ofEpochDay(19), true), 0.0);
+        assertArrayEquals(new LocalDate[]{LocalDate.ofEpochDay(10), LocalDate.ofEpochDay(15)}, sq.getDate(5, LocalDate.ofEpochDay(15), false));
+
+        StockQuotes other = new StockQuotes(2, 0.01);
+        other.add(LocalDate.ofEpochDay(15), 9, 9, 9, 9, 9);
+        other.add(LocalDate.ofEpochDay(25), 5, 6, 4, 5, 1);
+        assertTrue(sq.merge(other));
+        assertFalse(sq.merge(other));
+        assertArrayEquals(new double[]{1, 2.5, 3, 5}, sq.getClose(null, null, false), 0.0);
+    }
+
+    /**
+     * Test of addAll method, of class StockQuotes.
+     */
+    @Test
+    public void testAddAll()
+    {
+        Random random = new Random(6);
+        for(int round=0;round<50;round++)
+        {
+            StockQuotes expected = new StockQuotes(2, 0.01);
+            StockQuotes sq = new StockQuotes(2, 0.01);
+            for(int batch=0;batch<4;batch++)
+            {
+                int n = random.nextInt(40);
+                int base = batch*20;
+                Quote[] quotes = new Quote[n];
+                for(int i=0;i<n;i++)
+                {
+                    int day = round%3==0 ? base+i : round%3==1 ? base+n-i : base+random.nextInt(60);
+                    double close = random.nextInt(1000);
+                    quotes[i] = new Quote(LocalDate.ofEpochDay(day), close, close+1, close-1, close, i, random.nextInt(3)==0 ? 0.1 : 0);
+                }
+                int added = expected.size();
+                for(Quote e : quotes)
+                {
+                    expected.add(e);
+                }
+                added = expected.size()-added;
+                assertEquals(added, sq.addAll(quotes));
+            }
+            assertQuotesEquals(expected, sq);
+        }
+
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        LocalDate[] date = {LocalDate.ofEpochDay(12), LocalDate.ofEpochDay(11), LocalDate.ofEpochDay(10)};
+        assertEquals(3, sq.addAll(date, new double[]{3, 2, 1}, new double[]{3, 2, 1}, new double[]{3, 2, 1}, new double[]{3, 2, 1}, new double[]{3, 2, 1}));
+        assertArrayEquals(new double[]{1, 2, 3}, sq.getClose(null, null, false), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> sq.addAll(date, new double[3], new double[3], new double[3], new double[3], new double[2]));
+    }
+    /**
+     * Test of the date bounded getters, of class StockQuotes, with appends
+     * and inserts between lookups, against a filter over every date.
+     */
+    @Test
+    public void testDateLookup()
+    {
+        Random random = new Random(18);
+        StockQuotes sq = new StockQuotes();
+        TreeMap<LocalDate,Quote> expected = new TreeMap<>();
+        LocalDate day = LocalDate.parse("2000-01-03");
+        for(int i=0;i<2000;i++)
+        {
+            //mostly appends with gaps of one to four days, some inserts in the past
+            LocalDate date = random.nextInt(10)==0 ? day.minusDays(random.nextInt(400)) : (day = day.plusDays(1+random.nextInt(4)));
+            Quote q = new Quote(date, i, i, i, i, i);
+            sq.add(q);
+            expected.put(date, q);
+            if(i%50==0)
+            {
+                for(int k=0;k<20;k++)
+                {
+                    LocalDate a = expected.firstKey().plusDays(random.nextInt(3000)-10);
+                    LocalDate b = a.plusDays(random.nextInt(60));
+                    LocalDate[] dates = expected.subMap(a, true, b, true).keySet().toArray(new LocalDate[0]);
+                    assertArrayEquals(dates, sq.getDate(a, b, false));
+                    LocalDate[] head = expected.headMap(b, true).keySet().toArray(new LocalDate[0]);
+                    LocalDate[] tail = Arrays.copyOfRange(head, Math.max(head.length-7, 0), head.length);
+                    assertArrayEquals(tail, sq.getDate(7, b, false));
+                    StockQuotes sub = sq.getSubStockQuotes(a, b.plusDays(1));
+                    assertArrayEquals(dates, sub.getDate(null, null, false));
+                    LocalDate c = a.plusDays(random.nextInt((int) (b.toEpochDay()-a.toEpochDay())+1));
+                    assertArrayEquals(expected.subMap(c, true, b, true).keySet().toArray(new LocalDate[0]), sub.getDate(c, b, false));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of getSubStockQuotes and copy methods, of class StockQuotes.
+     */
+    @Test
+    public void testGetSubStockQuotes() throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes("SPY", true, 2, 0.01);
+        try( InputStream in = getSPY1993to2018())
+        {
+            new YahooQuotesParser().importQuotes(in, sq);
+        }
+        sq.addDividend(LocalDate.parse("2017-12-15"), 1.35);
+        sq.addDividend(LocalDate.parse("2017-09-15"), 1.23);
+        sq.addDividend(LocalDate.parse("2017-06-16"), 1.18);
+
+        LocalDate start = LocalDate.parse("2017-01-03");
+        LocalDate end = LocalDate.parse("2017-12-15");
+        StockQuotes view = sq.getSubStockQuotes(start, end);
+        List<Quote> expected = new ArrayList<>();
+        for(Quote item : sq.getQuotes())
+        {
+            if(!item.date.isBefore(start) && item.date.isBefore(end))
+            {
+                expected.add(item);
+            }
+        }
+        StockQuotes detached = new StockQuotes("SPY", true, 2, 0.01);
+        detached.addAll(expected.toArray(new Quote[0]));
+
+        assertTrue(view.isReadOnly());
+        assertEquals(start, view.firstKey());
+        assertEquals(LocalDate.parse("2017-12-14"), view.lastKey());
+        assertQuotesEquals(detached, view);
+        assertArrayEquals(detached.getClose(null, null, false), view.getClose(null, null, false), 0.0);
+        assertArrayEquals(detached.getClose(20, LocalDate.parse("2017-10-01"), true), view.getClose(20, LocalDate.parse("2017-10-01"), true), 0.0);
+        assertQuotesEquals(detached.getWeekly(), view.getWeekly());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(LocalDate.parse("2018-06-01"), 1, 1, 1, 1, 1));
+
+        StockQuotes tail = view.getSubStockQuotes(10, LocalDate.parse("2017-12-14"));
+        assertEquals(10, tail.size());
+        assertQuotesEquals(detached.getSubStockQuotes(10, LocalDate.parse("2017-12-14")), tail);
+        assertTrue(sq.getSubStockQuotes(start, start).isEmpty());
+
+        sq.add(LocalDate.parse("2018-06-01"), 1, 1, 1, 1, 1);
+        sq.add(LocalDate.parse("2017-06-01"), 1, 1, 1, 1, 1);
+        assertQuotesEquals(detached, view);
+
+        StockQuotes copy = view.copy();
+        assertFalse(copy.isReadOnly());
+        assertQuotesEquals(detached, copy);
+        copy.add(LocalDate.parse("2018-01-02"), 1, 1, 1, 1, 1);
+        assertEquals(view.size()+1, copy.size());
+    }
+    /**
+     * Test of merge method with every MergePolicy, of class StockQuotes.
+     */
+    @Test
+    public void testMergePolicy()
+    {
+        Random random = new Random(13);
+        for(StockQuotes.MergePolicy policy : StockQuotes.MergePolicy.values())
+        {
+            for(int round=0;round<30;round++)
+            {
+                TreeMap<LocalDate, Quote> expected = new TreeMap<>();
+                StockQuotes sq = new StockQuotes(2, 0.01);
+                StockQuotes other = new StockQuotes(2, 0.01);
+                for(int i=0;i<random.nextInt(200);i++)
+                {
+                    Quote e = randomQuote(random, 0, 300);
+                    sq.add(e);
+                    expected.put(e.date, e);
+                }
+                int base = round%3==0 ? 300 : 0;
+                for(int i=0;i<random.nextInt(200);i++)
+                {
+                    other.add(randomQuote(random, base, 300));
+                }
+                boolean changed = false;
+                for(Quote b : other.getQuotes())
+                {
+                    Quote a = expected.get(b.date);
+                    Quote c = a==null ? b : resolve(a, b, policy);
+                    changed |= a==null || !a.equals(c);
+                    expected.put(b.date, c);
+                }
+                sq.getWeekly();//the view must follow the merge
+                assertEquals(changed, sq.merge(other, policy));
+                StockQuotes ref = new StockQuotes(2, 0.01);
+                ref.addAll(expected.values().toArray(new Quote[0]));
+                assertQuotesEquals(ref, sq);
+                assertQuotesEquals(ref.getWeekly(), sq.getWeekly());
+                assertArrayEquals(ref.getClose(null, null, false), sq.getClose(null, null, false), 0.0);
+            }
+        }
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        sq.add(LocalDate.ofEpochDay(10), 1, 1, 1, 1, 1);
+        assertFalse(sq.merge(sq, StockQuotes.MergePolicy.Overwrite));
+        assertFalse(sq.merge(sq, StockQuotes.MergePolicy.PreferNonZero));
+    }
+    private static Quote randomQuote(Random random, int base, int days)
+    {
+        double[] v = new double[6];
+        for(int k=0;k<v.length;k++)
+        {
+            v[k] = random.nextInt(4)==0 ? 0 : random.nextInt(100)+1;
+        }
+        return new Quote(LocalDate.ofEpochDay(base+random.nextInt(days)), v[0], v[1], v[2], v[3], v[4], random.nextInt(3)==0 ? v[5]/100 : 0);
+    }
+    private static Quote resolve(Quote a, Quote b, StockQuotes.MergePolicy policy)
+    {
+        switch(policy)
+        {
+            case Overwrite:
+                return b.open==a.open && b.high==a.high && b.low==a.low && b.close==a.close && b.volume==a.volume && b.dividend==a.dividend ? a : b;
+            case PreferNonZero:
+                Quote c = new Quote(a.date, a.open!=0?a.open:b.open, a.high!=0?a.high:b.high, a.low!=0?a.low:b.low, a.close!=0?a.close:b.close, a.volume!=0?a.volume:b.volume, a.dividend!=0?a.dividend:b.dividend);
+                return c.open==a.open && c.high==a.high && c.low==a.low && c.close==a.close && c.volume==a.volume && c.dividend==a.dividend ? a : c;
+            case SumDividends:
+                return b.dividend==0 ? a : a.dividend(a.dividend+b.dividend);
+            default:
+                return a;
+        }
+    }
+    /**
+     * Test of getZeroCount method and zero repair, of class StockQuotes.
+     */
+    @Test
+    public void testGetZeroCount()
+    {
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        sq.add(LocalDate.ofEpochDay(10), 10, 12,  9,  0, 100);
+        sq.add(LocalDate.ofEpochDay(11), 11, 13, 10, 12, 0);
+        sq.add(LocalDate.ofEpochDay(12),  0, 14, 11,  0, 100);
+        sq.add(LocalDate.ofEpochDay(13), 12, 15, 12,  0, 100);
+        sq.add(LocalDate.ofEpochDay(14), 13, 16, 12, 15, 100);
+
+        assertEquals(3, sq.getZeroCount(StockQuotes.Field.Close));
+        assertEquals(1, sq.getZeroCount(StockQuotes.Field.Open));
+        assertEquals(1, sq.getZeroCount(StockQuotes.Field.Volume));
+        assertEquals(0, sq.getZeroCount(StockQuotes.Field.High));
+
+        assertArrayEquals(new double[]{31/3.0, 12, 12, 12, 15}, sq.getClose(null, null, false), 1e-9);
+        assertArrayEquals(new double[]{12.5, 12.5, 15}, sq.getClose(LocalDate.ofEpochDay(12), null, false), 1e-9);
+        assertArrayEquals(new double[]{11, 11, 12}, sq.getOpen(LocalDate.ofEpochDay(11), LocalDate.ofEpochDay(13), false), 1e-9);
+        assertArrayEquals(new double[]{0, 100}, sq.getVomume(2, LocalDate.ofEpochDay(12), false), 0.0);
+
+        StockQuotes view = sq.getSubStockQuotes(LocalDate.ofEpochDay(12), LocalDate.ofEpochDay(15));
+        assertEquals(2, view.getZeroCount(StockQuotes.Field.Close));
+        assertArrayEquals(new double[]{12.5, 12.5, 15}, view.getClose(null, null, false), 1e-9);
+
+        sq.add(LocalDate.ofEpochDay(12), 11, 14, 11, 13, 100);
+        assertEquals(2, sq.getZeroCount(StockQuotes.Field.Close));
+        assertEquals(0, sq.getZeroCount(StockQuotes.Field.Open));
+        assertArrayEquals(new double[]{31/3.0, 12, 13, 13, 15}, sq.getClose(null, null, false), 1e-9);
+        sq.add(LocalDate.ofEpochDay(9), 0, 0, 0, 0, 0);
+        assertEquals(3, sq.getZeroCount(StockQuotes.Field.Close));
+        assertEquals(1, sq.getZeroCount(StockQuotes.Field.High));
+        //counted but nothing to repair it with
+        assertEquals(0, sq.getHigh(null, null, false)[0], 0.0);
+    }
+    private static void assertQuotesEquals(StockQuotes expected, StockQuotes actual)
+    {
+        List<Quote> a = expected.getQuotes();
+        List<Quote> b = actual.getQuotes();
+        assertEquals(a.size(), b.size());
+        for(int i=0;i<a.size();i++)
+        {
+            assertEquals(a.get(i).date, b.get(i).date);
+            assertEquals(a.get(i).open, b.get(i).open);
+            assertEquals(a.get(i).high, b.get(i).high);
+            assertEquals(a.get(i).low, b.get(i).low);
+            assertEquals(a.get(i).close, b.get(i).close);
+            assertEquals(a.get(i).volume, b.get(i).volume);
+            assertEquals(a.get(i).dividend, b.get(i).dividend);
+        }
+        assertArrayEquals(expected.getClose(null, null, false), actual.getClose(null, null, false), 0.0);
+    }
+
+    /**
+     * Test of getBars method, of class StockQuotes.
+     */
+    @Test
+    public void testGetBars() throws IOException, ParseException
+    {
+        LocalDate start = LocalDate.parse("2016-01-04");
+        LocalDate end = LocalDate.parse("2017-09-08");
+
+        StockQuotes sq = new StockQuotes("KO", true, 2, 0.01);
+        YahooQuotesParser parser = new YahooQuotesParser();
+
+        try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream("finance.yahoo-ko.csv.gz")))
+        {
+            parser.importQuotes(in, sq);
+        }
+        try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream("finance.yahoo-ko-dividends.csv.gz")))
+        {
+            parser.importDividends(in, sq);
+        }
+        StockQuotes.Bars bars = sq.getBars(start, end, StockQuotes.Field.Open, StockQuotes.Field.High, StockQuotes.Field.Low, StockQuotes.Field.Close);
+
+        assertArrayEquals(sq.getDate(start, end, false), bars.date);
+        assertArrayEquals(sq.getOpen(start, end, false), bars.open, 0.0);
+        assertArrayEquals(sq.getHigh(start, end, false), bars.high, 0.0);
+        assertArrayEquals(sq.getLow(start, end, false), bars.low, 0.0);
+        assertArrayEquals(sq.getClose(start, end, false), bars.close, 0.0);
+        assertNull(bars.volume);
+
+        bars = sq.getBars(100, end, StockQuotes.Field.Close, StockQuotes.Field.Volume);
+        assertEquals(100, bars.length);
+        assertArrayEquals(sq.getDate(100, end, false), bars.date);
+        assertArrayEquals(sq.getClose(100, end, false), bars.close, 0.0);
+        assertArrayEquals(sq.getVomume(100, end, false), bars.get(StockQuotes.Field.Volume), 0.0);
+        assertNull(bars.open);
+    }
+
+    /**
+     * Test of the getters that write into a caller buffer, of class
+     * StockQuotes, against the allocating ones.
+     */
+    @Test
+    public void testGetIntoBuffer() throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes("KO", true, 2, 0.01);
+        YahooQuotesParser parser = new YahooQuotesParser();
+        try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream("finance.yahoo-ko.csv.gz")))
+        {
+            parser.importQuotes(in, sq);
+        }
+        try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream("finance.yahoo-ko-dividends.csv.gz")))
+        {
+            parser.importDividends(in, sq);
+        }
+        LocalDate start = LocalDate.parse("2017-03-01");
+        LocalDate end = LocalDate.parse("2017-08-31");
+        double[] buffer = new double[300];
+        int[] days = new int[300];
+        for(boolean reverse : new boolean[]{false, true})
+        {
+            double[] close = sq.getClose(start, end, reverse);
+            Arrays.fill(buffer, -1);
+            assertEquals(close.length, sq.getClose(start, end, reverse, buffer, 7));
+            assertArrayEquals(close, Arrays.copyOfRange(buffer, 7, 7+close.length), 0.0);
+            assertEquals(-1, buffer[6]);
+            assertEquals(-1, buffer[7+close.length]);
+
+            assertEquals(50, sq.getOpen(50, end, reverse, buffer, 0));
+            assertArrayEquals(sq.getOpen(50, end, reverse), Arrays.copyOf(buffer, 50), 0.0);
+            assertEquals(50, sq.getHigh(50, end, reverse, buffer, 250));
+            assertArrayEquals(sq.getHigh(50, end, reverse), Arrays.copyOfRange(buffer, 250, 300), 0.0);
+            assertEquals(close.length, sq.getLow(start, end, reverse, buffer, 0));
+            assertArrayEquals(sq.getLow(start, end, reverse), Arrays.copyOf(buffer, close.length), 0.0);
+            assertEquals(close.length, sq.getVomume(start, end, reverse, buffer, 0));
+            assertArrayEquals(sq.getVomume(start, end, reverse), Arrays.copyOf(buffer, close.length), 0.0);
+
+            LocalDate[] dates = sq.getDate(30, end, reverse);
+            assertEquals(30, sq.getDate(30, end, reverse, days, 1));
+            for(int i=0;i<dates.length;i++)
+            {
+                assertEquals(dates[i].toEpochDay(), days[1+i]);
+            }
+            assertEquals(close.length, sq.getDate(start, end, reverse, days, 0));
+            assertEquals(sq.getDate(start, end, reverse)[0].toEpochDay(), days[0]);
+        }
+        assertEquals(0, sq.getClose(LocalDate.parse("1980-01-01"), LocalDate.parse("1980-12-31"), false, buffer, 300));
+        assertThrows(IndexOutOfBoundsException.class, () -> sq.getClose(start, end, false, buffer, 200));
+        assertThrows(IndexOutOfBoundsException.class, () -> sq.getDate(30, end, false, days, -1));
+        assertThrows(IllegalArgumentException.class, () -> sq.getClose(end, start, false, buffer, 0));
+    }
+
+    /**
+     * Test of getClose(int, LocalDate, boolean) method, of class StockQuotes,
+     * against the former head map copy, sort and remove(0) extraction.
+     */
+    @Test
+    public void testTailWindowBenchmark() throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        try( InputStream in = getSPY1993to2018())
+        {
+            YahooQuotesParser parser = new YahooQuotesParser();
+            parser.importQuotes(in, sq);
+        }
+        List<Quote> all = sq.getQuotes();
+        LocalDate[] dates = sq.getDate(null, null, false);
+        int count = 200;
+        int rounds = 5;
+
+        long legacyNanos = 0;
+        long indexedNanos = 0;
+        for(int r=0;r<rounds;r++)
+        {
+            for(int i=count;i<dates.length;i+=50)
+            {
+                LocalDate end = dates[i];
+
+                long t0 = System.nanoTime();
+                ArrayList<Quote> quotes = new ArrayList<>();
+                for(Quote q : all)
+                {
+                    if(!q.date.isAfter(end))
+                    {
+                        quotes.add(q);
+                    }
+                }
+                Collections.sort(quotes);
+                while(quotes.size()>count)
+                {
+                    quotes.remove(0);
+                }
+                double[] legacy = new double[quotes.size()];
+                for(int j=0;j<legacy.length;j++)
+                {
+                    legacy[j] = quotes.get(j).close;
+                }
+                long t1 = System.nanoTime();
+                double[] indexed = sq.getClose(count, end, false);
+                long t2 = System.nanoTime();
+
+                legacyNanos += t1-t0;
+                indexedNanos += t2-t1;
+                assertArrayEquals(legacy, indexed, 0.0);
+            }
+        }
+        if(DEBUG)
+        {
+            System.out.printf("tail window %d bars: legacy=%dms indexed=%dms%n", count, legacyNanos/1_000_000, indexedNanos/1_000_000);
+        }
+    }
+
+    /**
+     * Test of addDividend method, of class StockQuotes.
+     */
+    @Test
+    public void testAddDividend()
+    {
+        double[] close = {46.72, 46.87, 46.11, 46.18, 46.50, 46.90};
+        double[] div   = {0,     0,     0.37,  0,     0.37,  0    };
+
+        StockQuotes sq = new StockQuotes("KO", true, 2, 0.01);
+        for(int i=close.length-1;i>=0;i--)
+        {
+            sq.add(LocalDate.ofEpochDay(i), close[i], close[i], close[i], close[i], 1);
+        }
+        //newest dividend first, so the second one only invalidates the older part
+        assertTrue(sq.addDividend(LocalDate.ofEpochDay(4), 0.37));
+        assertTrue(sq.addDividend(LocalDate.ofEpochDay(2), 0.37));
+
+        double[] exp = close.clone();
+        StockQuotes.adjust(exp, div);
+        assertArrayEquals(exp, sq.getClose(null, null, false), 0.000001);
+
+        double[] tail = Arrays.copyOfRange(close, 1, 4);
+        StockQuotes.adjust(tail, Arrays.copyOfRange(div, 1, 4));
+        assertArrayEquals(tail, sq.getClose(LocalDate.ofEpochDay(1), LocalDate.ofEpochDay(3), false), 0.000001);
+        assertArrayEquals(tail, sq.getClose(3, LocalDate.ofEpochDay(3), false), 0.000001);
+
+        //a bar inserted before the dividends must be adjusted by both
+        sq.add(LocalDate.ofEpochDay(-1), 47, 47, 47, 47, 1);
+        assertEquals(47-0.74, sq.getClose(null, null, false)[0], 0.000001);
+
+        sq.setApplyAdjust(false);
+        assertArrayEquals(close, sq.getClose(LocalDate.ofEpochDay(0), null, false), 0.0);
+    }
+
+    /**
+     * Test of concurrent readers and writers, of class StockQuotes.
+     * Every bar has close == epoch day, so any torn window is detected.
+     */
+    @Test
+    public void testConcurrentReadWrite() throws InterruptedException
+    {
+        final int days = 4000;
+        final int writers = 3;
+        final int readers = 4;
+        final StockQuotes sq = new StockQuotes(2, 0.01);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean done = new AtomicBoolean();
+
+        List<Thread> threads = new ArrayList<>();
+        for(int w=0;w<writers;w++)
+        {
+            final int writer = w;
+            threads.add(new Thread(() ->
+            {
+                //writer 0 appends in order, the others insert and replace in the past
+                for(int i=0;i<days && failure.get()==null;i++)
+                {
+                    int day = writer==0 ? i : (i*7919+writer)%days;
+                    sq.add(LocalDate.ofEpochDay(day), day, day+1, day-1, day, 1);
+                    if(day%50==0)
+                    {
+                        sq.addDividend(LocalDate.ofEpochDay(day), 0.1);
+                    }
+                }
+            }));
+        }
+        for(int r=0;r<readers;r++)
+        {
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    while(!done.get())
+                    {
+                        StockQuotes.Bars bars = sq.getBars(LocalDate.ofEpochDay(100), LocalDate.ofEpochDay(3000), StockQuotes.Field.High, StockQuotes.Field.Low, StockQuotes.Field.Close);
+                        for(int i=0;i<bars.length;i++)
+                        {
+                            long day = bars.date[i].toEpochDay();
+                            assertTrue(i==0 || day>bars.date[i-1].toEpochDay());
+                            assertEquals(day, bars.close[i], 0.0);
+                            assertEquals(day+1, bars.high[i], 0.0);
+                            assertEquals(day-1, bars.low[i], 0.0);
+                        }
+                        double[] close = sq.getClose(200, null, false);
+                        for(int i=1;i<close.length;i++)
+                        {
+                            assertTrue(close[i]>close[i-1]);
+                        }
+                        if(!sq.isEmpty())
+                        {
+                            assertTrue(!sq.firstKey().isAfter(sq.lastKey()));
+                            StockQuotes weekly = sq.getWeekly();
+                            assertTrue(weekly.size()<=sq.size());
+                        }
+                    }
+                }
+                catch(Throwable th)
+                {
+                    failure.compareAndSet(null, th);
+                }
+            }));
+        }
+        for(Thread t : threads)
+        {
+            t.start();
+        }
+        for(int i=0;i<writers;i++)
+        {
+            threads.get(i).join();
+        }
+        done.set(true);
+        for(Thread t : threads)
+        {
+            t.join();
+        }
+        assertNull(failure.get(), String.valueOf(failure.get()));
+        assertEquals(days, sq.size());
+        assertArrayEquals(new double[]{0, 1, 2}, sq.getClose(null, LocalDate.ofEpochDay(2), false), 0.0);
+    }
+
     /**
      * Test of adjust method, of class StockQuotes.
      */
@@ -389,6 +959,58 @@ public class StockQuotesTest
             }
         }
     }
+    /**
+     * Test of getSafeZoneStop and getChandelierStop methods in fixed-point
+     * mode, of class StockQuotes.
+     */
+    @Test
+    public void testFixedPointStops() throws IOException, ParseException
+    {
+        assertThrows(IllegalStateException.class, () -> new StockQuotes(2, 0.005).setFixedPoint(true));
+        {
+            StockQuotes sq = new StockQuotes(3, 0.01);
+            try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream("chandelier-stop-bull.csv.gz")))
+            {
+                new GoogleQuotesParser().importQuotes(in, sq);
+            }
+            sq.setFixedPoint(true);
+            StockQuotes.TrailingStop ts = sq.getChandelierStop(sq.firstKey(), sq.lastKey(), 8.0, 2.0, 2, false);
+            assertArrayEquals(new double[]{9.5, 10, 10, 10, 10, 12, 17, 17, 17}, Arrays.copyOfRange(ts.historyValues, 1, 10), 0.0);
+        }
+        for(String file : new String[]{"safezone-stop.csv.gz", "chandelier-stop-bull.csv.gz", "chandelier-stop-bear.csv.gz"})
+        {
+            StockQuotes sq = new StockQuotes(3, 0.01);
+            try( InputStream in = new GZIPInputStream(StockQuotesTest.class.getResourceAsStream(file)))
+            {
+                new GoogleQuotesParser().importQuotes(in, sq);
+            }
+            LocalDate[] dates = sq.getDate(null, null, false);
+            for(boolean sellShort : new boolean[]{false, true})
+            {
+                double stopLoss = sellShort ? 200 : 1;
+                for(int period : new int[]{2, 10})
+                {
+                    LocalDate entry = dates[Math.min(period, dates.length-1)];
+                    sq.setFixedPoint(false);
+                    StockQuotes.TrailingStop[] expected = {sq.getSafeZoneStop(entry, null, stopLoss, 2.0, period, sellShort), sq.getChandelierStop(entry, null, stopLoss, 2.0, period, sellShort)};
+                    sq.setFixedPoint(true);
+                    StockQuotes.TrailingStop[] result = {sq.getSafeZoneStop(entry, null, stopLoss, 2.0, period, sellShort), sq.getChandelierStop(entry, null, stopLoss, 2.0, period, sellShort)};
+                    for(int k=0;k<expected.length;k++)
+                    {
+                        assertArrayEquals(expected[k].historyDates, result[k].historyDates);
+                        assertEquals(expected[k].exitAt, result[k].exitAt);
+                        for(int i=0;i<result[k].historyValues.length;i++)
+                        {
+                            double value = result[k].historyValues[i];
+                            //exact integer rounding may be one step away from the double one
+                            assertEquals(expected[k].historyValues[i], value, 0.01+1e-9, file+" "+i);
+                            assertEquals(Math.rint(value*100)/100, value, 0.0);
+                        }
+                    }
+                }
+            }
+        }
+    }
     /**
      * Test of getChandelierStop method, of class StockQuotes.
      */
@@ -465,6 +1087,110 @@ public class StockQuotesTest
         }
     }
 
+    /**
+     * Test of resample method, of class StockQuotes.
+     */
+    @Test
+    public void testResample() throws IOException, ParseException
+    {
+        try( InputStream in = getSPY1993to2018())
+        {
+            StockQuotes sq = new StockQuotes(2, 0.01);
+            YahooQuotesParser parser = new YahooQuotesParser();
+            parser.importQuotes(in, sq);
+            sq.addDividend(LocalDate.parse("2017-12-15"), 1.35);
+            sq.addDividend(LocalDate.parse("2017-09-15"), 1.23);
+
+            assertResampled(sq, sq.resample(StockQuotes.Timeframe.Daily), d -> d);
+            assertResampled(sq, sq.getWeekly(), d -> JavaTime.atStartOfWeek(d));
+            assertResampled(sq, sq.getMonthly(), d -> d.withDayOfMonth(1));
+            assertResampled(sq, sq.resample(StockQuotes.Timeframe.Quarterly), d -> d.withDayOfMonth(1).withMonth((d.getMonthValue()-1)/3*3+1));
+            assertResampled(sq, sq.resample(StockQuotes.Timeframe.Yearly), d -> d.withDayOfYear(1));
+            assertResampled(sq, sq.resample(10), d -> LocalDate.ofEpochDay(Math.floorDiv(d.toEpochDay(), 10)*10));
+            assertThrows(IllegalArgumentException.class, () -> sq.resample(StockQuotes.Timeframe.Hourly));
+            assertThrows(IllegalArgumentException.class, () -> sq.resample(0));
+            assertTrue(new StockQuotes(2, 0.01).getWeekly().isEmpty());
+        }
+    }
+    /**
+     * Test of getWeekly and getMonthly methods as views updated by add, of class StockQuotes.
+     */
+    @Test
+    public void testResampledViews() throws IOException, ParseException
+    {
+        StockQuotes all = new StockQuotes(2, 0.01);
+        try( InputStream in = getSPY1993to2018())
+        {
+            new YahooQuotesParser().importQuotes(in, all);
+        }
+        List<Quote> quotes = all.getQuotes();
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        sq.addAll(quotes.subList(0, 1000).toArray(new Quote[0]));
+        StockQuotes weekly = sq.getWeekly();
+        StockQuotes monthly = sq.getMonthly();
+        List<Quote> weeklyBefore = weekly.getQuotes();
+        assertTrue(weekly.isReadOnly());
+
+        for(int i=1000;i<quotes.size();i++)
+        {
+            sq.add(quotes.get(i));
+            if(i%97==0)
+            {
+                assertQuotesEquals(sq.resample(StockQuotes.Timeframe.Weekly), sq.getWeekly());
+                assertQuotesEquals(sq.resample(StockQuotes.Timeframe.Monthly), sq.getMonthly());
+            }
+        }
+        assertQuotesEquals(all.getWeekly(), sq.getWeekly());
+        assertQuotesEquals(all.getMonthly(), sq.getMonthly());
+        assertEquals(weeklyBefore.size(), weekly.size());
+        for(int i=0;i<weeklyBefore.size();i++)
+        {
+            assertEquals(weeklyBefore.get(i).close, weekly.getQuotes().get(i).close);
+            assertEquals(weeklyBefore.get(i).volume, weekly.getQuotes().get(i).volume);
+        }
+
+        Quote first = quotes.get(0);
+        sq.add(first.date.minusDays(1), 1, 1000, 1, 1, 1);
+        sq.addDividend(quotes.get(500).date, 0.5);
+        assertQuotesEquals(sq.resample(StockQuotes.Timeframe.Weekly), sq.getWeekly());
+        assertQuotesEquals(sq.resample(StockQuotes.Timeframe.Monthly), sq.getMonthly());
+    }
+    private static void assertResampled(StockQuotes daily, StockQuotes resampled, UnaryOperator<LocalDate> bucket)
+    {
+        TreeMap<LocalDate, List<Quote>> buckets = new TreeMap<>();
+        for(Quote item : daily.getQuotes())
+        {
+            buckets.computeIfAbsent(bucket.apply(item.date), k -> new ArrayList<>()).add(item);
+        }
+        List<Quote> actual = resampled.getQuotes();
+        assertEquals(buckets.size(), actual.size());
+        int i = 0;
+        for(List<Quote> items : buckets.values())
+        {
+            Quote first = items.get(0);
+            Quote last = items.get(items.size()-1);
+            Quote bar = actual.get(i++);
+            double high = first.high;
+            double low = first.low;
+            double volume = 0;
+            double dividend = 0;
+            for(Quote item : items)
+            {
+                high = Math.max(high, item.high);
+                low = Math.min(low, item.low);
+                volume += item.volume;
+                dividend += item.dividend;
+            }
+            assertEquals(first.date, bar.date);
+            assertEquals(first.open, bar.open);
+            assertEquals(high, bar.high);
+            assertEquals(low, bar.low);
+            assertEquals(last.close, bar.close);
+            assertEquals(volume, bar.volume);
+            assertEquals(dividend, bar.dividend);
+        }
+    }
+
     /**
      * Test of getMonthly method, of class StockQuotes.
      * @throws java.io.IOException
@@ -0,0 +1,117 @@
+/*
+ * StockUniverseTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance;
+
+import io.nut.finance.StockQuotes.Field;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author franci
+ */
+public class StockUniverseTest
+{
+    private static StockQuotes load(String ticker, String quotes) throws IOException, ParseException
+    {
+        StockQuotes sq = new StockQuotes(ticker, false, 2, 0.01);
+        try( InputStream in = new GZIPInputStream(StockUniverseTest.class.getResourceAsStream(quotes)))
+        {
+            new YahooQuotesParser().importQuotes(in, sq);
+        }
+        return sq;
+    }
+
+    /**
+     * Test of getSeries and getCrossSection methods, of class StockUniverse.
+     */
+    @Test
+    public void testAlignment() throws IOException, ParseException
+    {
+        StockQuotes ko = load("KO", "finance.yahoo-ko.csv.gz");
+        StockQuotes msft = load("MSFT", "finance.yahoo-msft.csv.gz");
+        StockQuotes few = new StockQuotes("FEW", false, 2, 0.01);
+        few.add(LocalDate.parse("2016-01-01"), 1, 1, 1, 1, 1);
+        few.add(ko.lastKey(), 2, 2, 2, 2, 2);
+
+        StockUniverse universe = new StockUniverse(Arrays.asList(ko, msft, few), Field.Close, Field.Volume);
+
+        assertEquals(3, universe.getSymbols());
+        assertArrayEquals(new String[]{"KO", "MSFT", "FEW"}, universe.getTickers());
+        assertEquals(-1, universe.indexOf("SPY"));
+        assertNull(universe.getSeries(Field.Close, "SPY"));
+        assertThrows(IllegalArgumentException.class, () -> universe.getSeries(Field.Open, "KO"));
+        assertThrows(IllegalArgumentException.class, () -> new StockUniverse(Arrays.asList(ko, ko)));
+
+        LocalDate[] dates = universe.getDates();
+        assertEquals(universe.getDays(), dates.length);
+        for(int i=1;i<dates.length;i++)
+        {
+            assertTrue(dates[i-1].isBefore(dates[i]));
+        }
+        assertEquals(LocalDate.parse("2016-01-01"), dates[0]);
+
+        for(StockQuotes sq : new StockQuotes[]{ko, msft, few})
+        {
+            double[] series = universe.getSeries(Field.Close, sq.getTicker());
+            int symbol = universe.indexOf(sq.getTicker());
+            LocalDate[] own = sq.getDate(null, null, false);
+            double[] close = sq.getClose(null, null, false);
+            int present = 0;
+            for(int t=0;t<dates.length;t++)
+            {
+                int i = Arrays.binarySearch(own, dates[t]);
+                if(i>=0)
+                {
+                    present++;
+                    assertEquals(close[i], series[t]);
+                    assertEquals(close[i], universe.get(Field.Close, t, symbol));
+                    assertEquals(close[i], universe.getCrossSection(Field.Close, dates[t])[symbol]);
+                }
+                else
+                {
+                    assertTrue(Double.isNaN(series[t]));
+                }
+            }
+            assertEquals(sq.size(), present);
+        }
+        double[] last = universe.getCrossSection(Field.Volume, ko.lastKey());
+        assertEquals(2.0, last[2]);
+        assertNull(universe.getCrossSection(Field.Volume, LocalDate.parse("2015-12-31")));
+
+        int days = universe.getDays();
+        assertEquals(0, universe.getSeries(Field.Close, 1, days, days).length);
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getSeries(Field.Close, 3, 0, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getSeries(Field.Close, -1, 0, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getSeries(Field.Close, 0, -1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getSeries(Field.Close, 0, 2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getSeries(Field.Close, 1, 0, days+1));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.get(Field.Close, days, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.get(Field.Close, 0, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> universe.getCrossSection(Field.Close, days));
+    }
+}
@@ -21,14 +21,17 @@
 package io.nut.finance;
 
 import io.nut.base.time.JavaTime;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  *
@@ -59,6 +62,27 @@ public class YahooQuotesParserTest
         }
     }
 
+    /**
+     * Test of importQuotes method, of class YahooQuotesParser, with a short line.
+     */
+    @Test
+    public void testImportQuotesError()
+    {
+        String csv = "Date,Open,High,Low,Close,Adj Close,Volume\n"
+                + "2017-08-09,46.1,46.3,46.0,46.2,46.2,1000\n"
+                + "2017-08-10,46.2,46.4,46.1,x\n";
+        StockQuotes sq = new StockQuotes(2, 0.01);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> new YahooQuotesParser().importQuotes(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), sq));
+        //the bars parsed before the error are kept
+        assertEquals(1, sq.size());
+
+        //a failure adding them does not hide the original error
+        StockQuotes readOnly = CompressedQuotes.compress(sq).get();
+        Exception ex = assertThrows(ArrayIndexOutOfBoundsException.class, () -> new YahooQuotesParser().importQuotes(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), readOnly));
+        assertEquals(1, ex.getSuppressed().length);
+        assertTrue(ex.getSuppressed()[0] instanceof UnsupportedOperationException);
+    }
+
     /**
      * Test of getQuotes method, of class YahooQuotesParser.
      * @throws java.net.MalformedURLException
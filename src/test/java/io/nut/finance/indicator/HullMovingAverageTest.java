@@ -20,8 +20,10 @@
  */
 package io.nut.finance.indicator;
 
+import io.nut.finance.StockQuotesTest;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import org.junit.jupiter.api.Test;
@@ -33,7 +35,7 @@ import org.junit.jupiter.api.Test;
 public class HullMovingAverageTest
 {
     /**
-     * Test of get method, of class WeightedMovingAverage.
+     * Test of get method, of class HullMovingAverage.
      */
     @Test
     public void testGet() throws IOException, ParseException
@@ -41,10 +43,46 @@ public class HullMovingAverageTest
         {   
             double[] value = {109.460, 107.070, 108.480, 107.290, 106.660, 109.680, 109.650, 109.660, 108.030, 107.960, 107.160, 106.110, 102.870, 102.200, 102.760, 103.220, 104.210, 107.530, 107.870, 107.420, 109.230, 109.570, 111.410, 111.730, 112.140, 111.960, 112.000, 109.510, 109.680, 109.150};
             HullMovingAverage instance = new HullMovingAverage(9);
-            double[] expect = {107.740, 107.193, 107.650, 108.382, 109.674, 110.617, 110.348, 109.705, 108.566, 106.968, 104.678, 102.523, 101.258, 101.527, 102.650, 104.178, 105.688, 106.834, 107.474, 108.625, 110.207, 111.510, 112.613, 113.007, 112.874, 112.093, 110.867, 109.218, 107.706, 106.128};
+            //WMA(3, 2*WMA(4)-WMA(9)), the first 8+2 values from the partial windows of WeightedMovingAverage
+            double[] expect = {109.460, 108.580, 108.321, 107.877, 107.345, 107.696, 108.513, 109.469, 109.594, 109.055, 108.086, 106.940, 105.079, 103.034, 101.646, 101.311, 102.056, 104.112, 106.438, 108.093, 109.296, 110.003, 110.931, 111.862, 112.623, 112.947, 112.896, 111.913, 110.671, 109.482};
             double[] result = instance.get1st(value);
             assertArrayEquals(expect, result, 0.005);
         }
     }
-    
+
+    /**
+     * Test of get1st method, of class HullMovingAverage, the single pass
+     * against the three WeightedMovingAverage arrays.
+     */
+    @Test
+    public void testSinglePass()
+    {
+        Random random = new Random(23);
+        double[] value = new double[50_000];
+        double price = 100;
+        for(int i=0;i<value.length;i++)
+        {
+            value[i] = price += random.nextGaussian();
+        }
+        for(int period : new int[]{0, 1, 2, 3, 4, 9, 16, 55, 200})
+        {
+            long t0 = System.nanoTime();
+            double[] wma1 = new WeightedMovingAverage(period).get1st(value);
+            double[] wma2 = new WeightedMovingAverage(period/2).get1st(value);
+            double[] diff = new double[value.length];
+            for(int i=0;i<value.length;i++)
+            {
+                diff[i] = wma2[i]*2-wma1[i];
+            }
+            double[] expected = period==0 ? new double[value.length] : new WeightedMovingAverage((int)Math.sqrt(period)).get1st(diff);
+            long t1 = System.nanoTime();
+            double[] result = new HullMovingAverage(period).get1st(value);
+            long t2 = System.nanoTime();
+            assertArrayEquals(expected, result, 0.0);
+            if(StockQuotesTest.DEBUG)
+            {
+                System.out.printf("hma(%d) over %d values: arrays=%dus single pass=%dus%n", period, value.length, (t1-t0)/1000, (t2-t1)/1000);
+            }
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * IndicatorStreamTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author franci
+ */
+public class IndicatorStreamTest
+{
+    static double[] prices(int n, long seed)
+    {
+        Random random = new Random(seed);
+        double[] value = new double[n];
+        double price = 100;
+        for(int i=0;i<n;i++)
+        {
+            value[i] = price += random.nextGaussian();
+        }
+        return value;
+    }
+    static Indicator[] indicators(int period)
+    {
+        return new Indicator[]
+        {
+            new SimpleMovingAverage(period),
+            new ExponentialMovingAverage(period),
+            new ExponentialMovingAverage(period, true),
+            new WeightedMovingAverage(period),
+            new HullMovingAverage(period),
+            new MovingAverageConvergenceDivergence(Math.max(period/2, 1), period, Math.max(period/3, 1)),
+        };
+    }
+
+    /**
+     * Test of update method, of class IndicatorStream, it must give the same
+     * values as get1st.
+     */
+    @Test
+    public void testUpdate()
+    {
+        double[] value = prices(300, 21);
+        for(int period : new int[]{0, 1, 2, 3, 9, 26, 299, 300, 500})
+        {
+            for(Indicator indicator : indicators(period))
+            {
+                double[] expected = indicator.get1st(value);
+                IndicatorStream stream = indicator.stream();
+                assertTrue(Double.isNaN(stream.get()));
+                for(int i=0;i<value.length;i++)
+                {
+                    assertEquals(expected[i], stream.update(value[i]), 0.0, indicator.getClass().getSimpleName()+"("+period+") at "+i);
+                    assertEquals(expected[i], stream.get(), 0.0);
+                }
+                assertEquals(value.length, stream.count());
+            }
+        }
+    }
+
+    /**
+     * Test of getSignal and getHistogram methods, of class
+     * MovingAverageConvergenceDivergence.Stream.
+     */
+    @Test
+    public void testMacd()
+    {
+        double[] value = prices(200, 22);
+        MovingAverageConvergenceDivergence macd = new MovingAverageConvergenceDivergence();
+        double[][] expected = macd.getAll(value);
+        MovingAverageConvergenceDivergence.Stream stream = macd.stream();
+        for(int i=0;i<value.length;i++)
+        {
+            assertEquals(expected[0][i], stream.update(value[i]), 0.0);
+            assertEquals(expected[1][i], stream.getSignal(), 0.0);
+            assertEquals(expected[2][i], stream.getHistogram(), 0.0);
+        }
+    }
+
+    /**
+     * Test of snapshot and restore methods, of class IndicatorStream.
+     */
+    @Test
+    public void testSnapshotRestore()
+    {
+        double[] value = prices(120, 23);
+        for(Indicator indicator : indicators(9))
+        {
+            double[] expected = indicator.get1st(value);
+            IndicatorStream stream = indicator.stream();
+            for(int i=0;i<50;i++)
+            {
+                stream.update(value[i]);
+            }
+            IndicatorStream checkpoint = stream.snapshot();
+            //a feed that is thrown away
+            for(int i=0;i<30;i++)
+            {
+                stream.update(i%2==0 ? 1e6 : -1e6);
+            }
+            stream.restore(checkpoint);
+            assertEquals(50, stream.count());
+            assertEquals(expected[49], stream.get(), 0.0);
+            for(int i=50;i<value.length;i++)
+            {
+                assertEquals(expected[i], stream.update(value[i]), 0.0);
+            }
+            //the snapshot was not touched and can be restored again
+            assertEquals(expected[49], checkpoint.get(), 0.0);
+            IndicatorStream other = indicator.stream();
+            other.restore(checkpoint);
+            assertEquals(expected[50], other.update(value[50]), 0.0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new SimpleMovingAverage(9).stream().restore(new SimpleMovingAverage(10).stream()));
+        assertThrows(IllegalArgumentException.class, () -> new SimpleMovingAverage(9).stream().restore(new WeightedMovingAverage(9).stream()));
+        assertThrows(IllegalArgumentException.class, () -> new ExponentialMovingAverage(9).stream().restore(new ExponentialMovingAverage(9, true).stream()));
+        assertThrows(IllegalArgumentException.class, () -> new MovingAverageConvergenceDivergence().stream().restore(new MovingAverageConvergenceDivergence(12, 26, 10).stream()));
+    }
+}
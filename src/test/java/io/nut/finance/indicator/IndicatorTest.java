@@ -0,0 +1,136 @@
+/*
+ * IndicatorTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author franci
+ */
+public class IndicatorTest
+{
+    //an indicator written outside this package, with only the methods it needs
+    static class Doubling implements Indicator
+    {
+        @Override
+        public int seedSize(double weight)
+        {
+            return 0;
+        }
+        @Override
+        public double[] get1st(double[] value)
+        {
+            double[] ret = new double[value.length];
+            for(int i=0;i<value.length;i++)
+            {
+                ret[i] = 2*value[i];
+            }
+            return ret;
+        }
+        @Override
+        public double[][] getAll(double[] value)
+        {
+            return new double[][]{get1st(value), value.clone()};
+        }
+    }
+
+    /**
+     * Test of the default methods of class Indicator.
+     */
+    @Test
+    public void testDefaults()
+    {
+        Indicator indicator = new Doubling();
+        assertThrows(UnsupportedOperationException.class, () -> indicator.stream());
+
+        double[] value = IndicatorStreamTest.prices(50, 25);
+        double[] first = new double[23];
+        assertEquals(20, indicator.get1st(value, 10, 20, first, 3));
+        assertArrayEquals(indicator.get1st(Arrays.copyOfRange(value, 10, 30)), Arrays.copyOfRange(first, 3, 23), 0.0);
+        double[][] all = new double[2][20];
+        assertEquals(20, indicator.getAll(value, 30, 20, all, 0));
+        assertArrayEquals(Arrays.copyOfRange(value, 30, 50), all[1], 0.0);
+        assertThrows(IndexOutOfBoundsException.class, () -> indicator.get1st(value, 40, 20, first, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> indicator.get1st(value, 0, 20, first, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> indicator.getAll(value, 0, 20, new double[1][20], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> indicator.getAll(value, 0, 20, new double[][]{new double[20], new double[19]}, 0));
+    }
+
+    /**
+     * Test of the range and destination overloads of get1st and getAll, of
+     * class Indicator, against the allocating ones over a copy of the range.
+     */
+    @Test
+    public void testRange()
+    {
+        double[] value = IndicatorStreamTest.prices(400, 24);
+        int from = 37;
+        int len = 150;
+        int offset = 5;
+        double[] sub = Arrays.copyOfRange(value, from, from+len);
+        for(int period : new int[]{0, 1, 2, 9, 26, 200})
+        {
+            for(Indicator indicator : IndicatorStreamTest.indicators(period))
+            {
+                double[][] expected = indicator.getAll(sub);
+                double[][] dst = new double[expected.length][offset+len+3];
+                for(double[] line : dst)
+                {
+                    Arrays.fill(line, -1);
+                }
+                assertEquals(len, indicator.getAll(value, from, len, dst, offset));
+                for(int k=0;k<expected.length;k++)
+                {
+                    assertArrayEquals(expected[k], Arrays.copyOfRange(dst[k], offset, offset+len), 0.0);
+                    assertEquals(-1, dst[k][offset-1]);
+                    assertEquals(-1, dst[k][offset+len]);
+                }
+                //the same scratch buffers are reused by the next call
+                double[] first = new double[len];
+                assertEquals(len, indicator.get1st(value, from, len, first, 0));
+                assertArrayEquals(expected[0], first, 0.0);
+                assertEquals(0, indicator.get1st(value, value.length, 0, first, len));
+            }
+        }
+        Indicator sma = new SimpleMovingAverage(9);
+        assertThrows(IndexOutOfBoundsException.class, () -> sma.get1st(value, 300, 101, new double[200], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> sma.get1st(value, -1, 10, new double[200], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> sma.get1st(value, 0, 10, new double[200], 195));
+    }
+
+    /**
+     * Test of scratch method, of class Buffers, only the arrays up to the cap are kept.
+     */
+    @Test
+    public void testScratch()
+    {
+        double[] small = Buffers.scratch(Buffers.MACD_SLOW, 100);
+        assertSame(small, Buffers.scratch(Buffers.MACD_SLOW, 50));
+        double[] large = Buffers.scratch(Buffers.MACD_SLOW, Buffers.MAX_RETAINED+1);
+        assertEquals(Buffers.MAX_RETAINED+1, large.length);
+        assertNotSame(large, Buffers.scratch(Buffers.MACD_SLOW, Buffers.MAX_RETAINED+1));
+        assertTrue(Buffers.scratch(Buffers.MACD_SLOW, 100).length<=Buffers.MAX_RETAINED);
+        assertEquals(Buffers.MAX_RETAINED, Buffers.scratch(Buffers.MACD_SLOW, Buffers.MAX_RETAINED).length);
+    }
+}
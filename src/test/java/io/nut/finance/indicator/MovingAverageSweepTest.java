@@ -0,0 +1,118 @@
+/*
+ * MovingAverageSweepTest.java
+ *
+ *  Copyright (C) 2017-2026 francitoshi@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Report bugs or new features to: francitoshi@gmail.com
+ */
+package io.nut.finance.indicator;
+
+import io.nut.finance.StockQuotesTest;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author franci
+ */
+public class MovingAverageSweepTest
+{
+    /**
+     * Test of simple method, of class MovingAverageSweep.
+     */
+    @Test
+    public void testSimple()
+    {
+        double[] value = IndicatorStreamTest.prices(5000, 25);
+        double[][] sma = MovingAverageSweep.simple(value, 2, 250);
+        assertEquals(249, sma.length);
+        for(int period=2;period<=250;period++)
+        {
+            assertArrayEquals(new SimpleMovingAverage(period).get1st(value), sma[period-2], 1e-9, "period="+period);
+        }
+        double[] shorter = {5, 6, 7};
+        double[][] few = MovingAverageSweep.simple(shorter, 1, 5);
+        for(int period=1;period<=5;period++)
+        {
+            assertArrayEquals(new SimpleMovingAverage(period).get1st(shorter), few[period-1], 1e-12);
+        }
+        assertEquals(0, MovingAverageSweep.simple(new double[0], 2, 3)[1].length);
+        assertThrows(IllegalArgumentException.class, () -> MovingAverageSweep.simple(value, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> MovingAverageSweep.simple(value, 5, 4));
+    }
+
+    /**
+     * Test of exponential method, of class MovingAverageSweep.
+     */
+    @Test
+    public void testExponential()
+    {
+        double[] value = IndicatorStreamTest.prices(5000, 26);
+        for(boolean smaStart : new boolean[]{false, true})
+        {
+            double[][] ema = MovingAverageSweep.exponential(value, 2, 250, smaStart);
+            assertEquals(249, ema.length);
+            for(int period=2;period<=250;period++)
+            {
+                assertArrayEquals(new ExponentialMovingAverage(period, smaStart).get1st(value), ema[period-2], 0.0, "period="+period);
+            }
+            double[] shorter = {5, 6, 7};
+            double[][] few = MovingAverageSweep.exponential(shorter, 1, 20, smaStart);
+            for(int period=1;period<=20;period++)
+            {
+                assertArrayEquals(new ExponentialMovingAverage(period, smaStart).get1st(shorter), few[period-1], 0.0);
+            }
+        }
+        assertEquals(0, MovingAverageSweep.exponential(new double[0], 2, 3, false)[1].length);
+    }
+
+    /**
+     * MovingAverageSweep against one indicator per period.
+     */
+    @Test
+    public void testSweepBenchmark()
+    {
+        double[] value = IndicatorStreamTest.prices(10_000, 27);
+        int rounds = 5;
+        long[] nanos = new long[4];
+        for(int r=0;r<rounds;r++)
+        {
+            long t0 = System.nanoTime();
+            for(int period=2;period<=250;period++)
+            {
+                new SimpleMovingAverage(period).get1st(value);
+            }
+            long t1 = System.nanoTime();
+            MovingAverageSweep.simple(value, 2, 250);
+            long t2 = System.nanoTime();
+            for(int period=2;period<=250;period++)
+            {
+                new ExponentialMovingAverage(period).get1st(value);
+            }
+            long t3 = System.nanoTime();
+            MovingAverageSweep.exponential(value, 2, 250, false);
+            long t4 = System.nanoTime();
+            nanos[0] += t1-t0;
+            nanos[1] += t2-t1;
+            nanos[2] += t3-t2;
+            nanos[3] += t4-t3;
+        }
+        if(StockQuotesTest.DEBUG)
+        {
+            System.out.printf("sweep 2..250 over %d values: sma %dms -> %dms, ema %dms -> %dms%n", value.length, nanos[0]/rounds/1_000_000, nanos[1]/rounds/1_000_000, nanos[2]/rounds/1_000_000, nanos[3]/rounds/1_000_000);
+        }
+    }
+}
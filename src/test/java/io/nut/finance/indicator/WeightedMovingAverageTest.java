@@ -20,8 +20,10 @@
  */
 package io.nut.finance.indicator;
 
-
+import io.nut.finance.StockQuotesTest;
+import java.util.Random;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -51,5 +53,71 @@ public class WeightedMovingAverageTest
             assertArrayEquals(expect, result, 0.005);
         }
     }
-    
+
+    /**
+     * the former get1st, that sums the whole window at every position
+     */
+    private static double[] nested(int period, double[] value)
+    {
+        double[] tmp = new double[value.length];
+        if(period==0 || tmp.length==0)
+        {
+            return tmp;
+        }
+        tmp[0] = value[0];
+        for(int i=1;i<value.length;i++)
+        {
+            double num = 0;
+            double den = 0;
+            for(int j=0;j<=i&&j<period;j++)
+            {
+                int p = period-j;
+                num += value[i-j] * p;
+                den += p;
+            }
+            tmp[i] = num / den;
+        }
+        return tmp;
+    }
+
+    /**
+     * Test of get1st method, of class WeightedMovingAverage, the running sums
+     * against the former nested loops.
+     */
+    @Test
+    public void testRunningSums()
+    {
+        Random random = new Random(22);
+        double[] value = new double[20_000];
+        double price = 100;
+        for(int i=0;i<value.length;i++)
+        {
+            value[i] = price = Math.max(price + random.nextGaussian(), 1);
+        }
+        for(int period : new int[]{0, 1, 2, 3, 7, 10, 50, 200, 19_999, 20_000, 30_000})
+        {
+            double[] expected = nested(period, value);
+            double[] result = new WeightedMovingAverage(period).get1st(value);
+            for(int i=0;i<value.length;i++)
+            {
+                assertEquals(expected[i], result[i], Math.abs(expected[i])*1e-12, "period="+period+" i="+i);
+                if(period!=0 && i%period==0)
+                {
+                    //the sums are recomputed there, so they match exactly
+                    assertEquals(expected[i], result[i], 0.0);
+                }
+            }
+        }
+        int period = 200;
+        long t0 = System.nanoTime();
+        double[] expected = nested(period, value);
+        long t1 = System.nanoTime();
+        double[] result = new WeightedMovingAverage(period).get1st(value);
+        long t2 = System.nanoTime();
+        assertArrayEquals(expected, result, 1e-9);
+        if(StockQuotesTest.DEBUG)
+        {
+            System.out.printf("wma(%d) over %d values: nested=%dus running=%dus%n", period, value.length, (t1-t0)/1000, (t2-t1)/1000);
+        }
+    }
 }